@@ -0,0 +1,68 @@
+package com.steammachine.methodtable;
+
+import java.util.Objects;
+import java.util.concurrent.Flow;
+
+/**
+ * Адаптер {@link ClassScanPublisher} к {@link Flow} (Java 9+). Собирается отдельно от
+ * библиотеки, которая собирается для Java 8. Вызовы только делегируются: правила выдачи,
+ * запроса и отмены у {@link ClassScanPublisher} те же, что у {@link Flow}.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class FlowAdapters {
+
+    private FlowAdapters() {
+    }
+
+    /**
+     * @param publisher обход classpath
+     * @return тот же обход как {@link Flow.Publisher}
+     */
+    public static Flow.Publisher<ClassPositions> toFlowPublisher(ClassScanPublisher publisher) {
+        Objects.requireNonNull(publisher);
+        return subscriber -> publisher.subscribe(new SubscriberAdapter<>(
+                Objects.requireNonNull(subscriber)));
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private static final class SubscriberAdapter<T> implements ClassScanPublisher.Subscriber<T> {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private SubscriberAdapter(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onSubscribe(ClassScanPublisher.Subscription subscription) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(T item) {
+            subscriber.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            subscriber.onComplete();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Данные классов для бенчмарков: небольшой и большой классы JDK, синтетический класс с заданным
+ * количеством методов и набор классов из образа JDK ({@code jrt:/}, на Java 8 - rt.jar).
+ *
+ * @author Vladimir Bogodukhov
+ */
+final class ClassFiles {
+
+    /**
+     * небольшой класс - несколько коротких методов
+     */
+    static final String SMALL = "small";
+
+    /**
+     * большой класс JDK - сотни методов и большая таблица констант
+     */
+    static final String HUGE = "huge";
+
+    /**
+     * синтетический класс с {@link #SYNTHETIC_METHODS} методами и длинными таблицами строк
+     */
+    static final String SYNTHETIC = "synthetic";
+
+    private static final int SYNTHETIC_METHODS = 2000;
+    private static final int SYNTHETIC_LINES = 16;
+
+    private static final String[] SYNTHETIC_DESCRIPTORS = {
+            "()V",
+            "(I)I",
+            "(Ljava/lang/String;)Ljava/lang/String;",
+            "(J[BLjava/util/Map;)Z",
+            "([[Ljava/lang/Object;DF)[Ljava/lang/String;",
+            "(Ljava/util/List;Ljava/util/function/Function;I)Ljava/util/Optional;",
+    };
+
+    private ClassFiles() {
+    }
+
+    static byte[] load(String kind) throws IOException {
+        switch (kind) {
+            case SMALL: {
+                return resource("java/util/AbstractMap$SimpleEntry.class");
+            }
+            case HUGE: {
+                return resource("java/lang/Character.class");
+            }
+            case SYNTHETIC: {
+                return synthetic(SYNTHETIC_METHODS, SYNTHETIC_LINES);
+            }
+            default: {
+                throw new IllegalArgumentException("unknown class kind " + kind);
+            }
+        }
+    }
+
+    /**
+     * @param limit максимальное количество классов
+     * @return классы модуля java.base из {@code jrt:/} или, на Java 8, из rt.jar - в порядке
+     * имен, чтобы набор был одинаковым от запуска к запуску
+     */
+    static List<byte[]> jdkCorpus(int limit) throws IOException {
+        FileSystem jrt;
+        try {
+            jrt = FileSystems.newFileSystem(URI.create("jrt:/"), Collections.emptyMap());
+        } catch (ProviderNotFoundException e) {
+            return rtJarCorpus(limit);
+        }
+        try (Stream<Path> stream = Files.walk(jrt.getPath("/modules/java.base"))) {
+            List<Path> files = stream.filter(path -> path.toString().endsWith(".class"))
+                    .filter(path -> !path.toString().endsWith("module-info.class"))
+                    .sorted()
+                    .limit(limit)
+                    .collect(Collectors.toList());
+            List<byte[]> result = new ArrayList<>(files.size());
+            for (Path file : files) {
+                result.add(Files.readAllBytes(file));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Исходный потоковый разбор через {@link DataInputStream}: каждая сигнатура строится
+     * заново, без {@link SignatureCache} - точка отсчета для сравнения.
+     */
+    static Map<String, SourceCodePosition> readUncached(byte[] bytes) throws IOException {
+        Map<String, SourceCodePosition> result = new HashMap<>();
+        ClassMethodTable.visitDataInputStream(new DataInputStream(new ByteArrayInputStream(bytes)),
+                (name, descriptor, accessFlags, position) -> {
+                    result.put(ClassMethodTable.parseMethodDescriptor(name, descriptor), position);
+                    return true;
+                });
+        return result;
+    }
+
+    /**
+     * Строит файл класса с заданным количеством методов. У каждого метода есть атрибут Code с
+     * таблицей номеров строк; дескрипторы чередуются из небольшого набора.
+     */
+    static byte[] synthetic(int methodCount, int linesPerMethod) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(ClassMethodTable.CCIC.CLASS_MAGIC_NUMBER);
+            out.writeShort(0); // minor
+            out.writeShort(52); // major - Java 8
+
+            int descriptorBase = 7;
+            int nameBase = descriptorBase + SYNTHETIC_DESCRIPTORS.length;
+            out.writeShort(nameBase + methodCount); // constant_pool_count
+            writeUtf8(out, "Synthetic"); // #1
+            writeClass(out, 1); // #2
+            writeUtf8(out, "java/lang/Object"); // #3
+            writeClass(out, 3); // #4
+            writeUtf8(out, "Code"); // #5
+            writeUtf8(out, "LineNumberTable"); // #6
+            for (String descriptor : SYNTHETIC_DESCRIPTORS) {
+                writeUtf8(out, descriptor);
+            }
+            for (int i = 0; i < methodCount; i++) {
+                writeUtf8(out, "method" + i);
+            }
+
+            out.writeShort(0x0021); // ACC_PUBLIC | ACC_SUPER
+            out.writeShort(2); // this_class
+            out.writeShort(4); // super_class
+            out.writeShort(0); // interfaces_count
+            out.writeShort(0); // fields_count
+
+            out.writeShort(methodCount);
+            for (int i = 0; i < methodCount; i++) {
+                out.writeShort(0x0009); // ACC_PUBLIC | ACC_STATIC
+                out.writeShort(nameBase + i);
+                out.writeShort(descriptorBase + i % SYNTHETIC_DESCRIPTORS.length);
+                out.writeShort(1); // attributes_count
+
+                int lineNumberTableLength = 2 + 4 * linesPerMethod;
+                out.writeShort(5); // Code
+                out.writeInt(2 + 2 + 4 + linesPerMethod + 2 + 2 + 6 + lineNumberTableLength);
+                out.writeShort(1); // max_stack
+                out.writeShort(16); // max_locals
+                out.writeInt(linesPerMethod); // code_length
+                for (int k = 0; k < linesPerMethod - 1; k++) {
+                    out.writeByte(0x00); // nop
+                }
+                out.writeByte(0xB1); // return
+                out.writeShort(0); // exception_table_length
+                out.writeShort(1); // attributes_count
+                out.writeShort(6); // LineNumberTable
+                out.writeInt(lineNumberTableLength);
+                out.writeShort(linesPerMethod);
+                int firstLine = 10 + i * (linesPerMethod + 2);
+                for (int k = 0; k < linesPerMethod; k++) {
+                    out.writeShort(k); // start_pc
+                    out.writeShort(firstLine + k); // line_number
+                }
+            }
+            out.writeShort(0); // attributes_count
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private static List<byte[]> rtJarCorpus(int limit) throws IOException {
+        Path rtJar = Paths.get(System.getProperty("java.home"), "lib", "rt.jar");
+        try (ZipFile archive = new ZipFile(rtJar.toFile())) {
+            List<ZipEntry> entries = new ArrayList<>();
+            Enumeration<? extends ZipEntry> enumeration = archive.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                if (entry.getName().startsWith("java/") && entry.getName().endsWith(".class")) {
+                    entries.add(entry);
+                }
+            }
+            entries.sort((left, right) -> left.getName().compareTo(right.getName()));
+            List<byte[]> result = new ArrayList<>();
+            for (ZipEntry entry : entries.subList(0, Math.min(limit, entries.size()))) {
+                try (InputStream stream = archive.getInputStream(entry)) {
+                    result.add(ClassMethodTable.readFully(stream, entry.getSize()));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream stream = ClassLoader.getSystemResourceAsStream(name)) {
+            if (stream == null) {
+                throw new IllegalStateException("class file not found " + name);
+            }
+            return ClassMethodTable.readFully(stream, -1);
+        }
+    }
+
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(ClassMethodTable.CCIC.Constant_Utf8);
+        out.writeUTF(value);
+    }
+
+    private static void writeClass(DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(ClassMethodTable.CCIC.Constant_Class);
+        out.writeShort(nameIndex);
+    }
+}
@@ -0,0 +1,80 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Разбор одного класса разными способами: небольшой, большой и синтетический классы. <p>
+ * Запуск с {@code -prof gc} (так настроена задача {@code jmh} в build.gradle) добавляет
+ * {@code gc.alloc.rate.norm} - количество байт, выделенных на один разбор.
+ *
+ * @author Vladimir Bogodukhov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ClassParseBenchmark {
+
+    @Param({ClassFiles.SMALL, ClassFiles.HUGE, ClassFiles.SYNTHETIC})
+    public String kind;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        bytes = ClassFiles.load(kind);
+    }
+
+    @Benchmark
+    public Map<String, SourceCodePosition> readClassFromInputStream() throws IOException {
+        return ClassMethodTable.readClassFromInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * @see ClassFiles#readUncached - точка отсчета
+     */
+    @Benchmark
+    public Map<String, SourceCodePosition> readClassUncached() throws IOException {
+        return ClassFiles.readUncached(bytes);
+    }
+
+    /**
+     * прежняя точка входа потокового разбора; сигнатуры берутся из
+     * {@link SignatureCache#shared()}, поэтому это уже не исходное поведение
+     */
+    @Benchmark
+    public Map<String, SourceCodePosition> readClassFromDataInputStream() throws IOException {
+        return ClassMethodTable.readClassFromDataInputStream(
+                new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Benchmark
+    public Map<String, SourceCodePosition> readClassFromByteBuffer() {
+        return ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(bytes));
+    }
+
+    @Benchmark
+    public MethodPositionTable parseTable() throws IOException {
+        return ClassMethodTableParser.forCurrentThread()
+                .parseTable(new ByteArrayInputStream(bytes), bytes.length);
+    }
+}
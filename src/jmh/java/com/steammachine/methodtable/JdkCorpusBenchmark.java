@@ -0,0 +1,81 @@
+package com.steammachine.methodtable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Разбор набора классов из образа JDK, одна операция - разбор всего набора. Набор реальных
+ * классов дает распределение размеров и дескрипторов, которого нет у отдельных классов.
+ *
+ * @author Vladimir Bogodukhov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class JdkCorpusBenchmark {
+
+    @Param("2000")
+    public int classes;
+
+    private List<byte[]> corpus;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = ClassFiles.jdkCorpus(classes);
+    }
+
+    @Benchmark
+    public void readClassFromInputStream(Blackhole blackhole) throws IOException {
+        for (byte[] bytes : corpus) {
+            blackhole.consume(
+                    ClassMethodTable.readClassFromInputStream(new ByteArrayInputStream(bytes)));
+        }
+    }
+
+    /**
+     * @see ClassFiles#readUncached - точка отсчета
+     */
+    @Benchmark
+    public void readClassUncached(Blackhole blackhole) throws IOException {
+        for (byte[] bytes : corpus) {
+            blackhole.consume(ClassFiles.readUncached(bytes));
+        }
+    }
+
+    /**
+     * прежняя точка входа потокового разбора, сигнатуры из {@link SignatureCache#shared()}
+     */
+    @Benchmark
+    public void readClassFromDataInputStream(Blackhole blackhole) throws IOException {
+        for (byte[] bytes : corpus) {
+            blackhole.consume(ClassMethodTable.readClassFromDataInputStream(
+                    new DataInputStream(new ByteArrayInputStream(bytes))));
+        }
+    }
+
+    @Benchmark
+    public void readClassFromByteBuffer(Blackhole blackhole) {
+        for (byte[] bytes : corpus) {
+            blackhole.consume(ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(bytes)));
+        }
+    }
+}
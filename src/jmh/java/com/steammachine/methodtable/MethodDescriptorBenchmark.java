@@ -0,0 +1,69 @@
+package com.steammachine.methodtable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Построение сигнатур методов: из дескриптора JVM и из {@link Method}. Одна операция -
+ * построение сигнатур для всего набора.
+ *
+ * @author Vladimir Bogodukhov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MethodDescriptorBenchmark {
+
+    private static final String[][] DESCRIPTORS = {
+            {"run", "()V"},
+            {"hashCode", "()I"},
+            {"equals", "(Ljava/lang/Object;)Z"},
+            {"valueOf", "(J)Ljava/lang/String;"},
+            {"arraycopy", "(Ljava/lang/Object;ILjava/lang/Object;II)V"},
+            {"compute", "(Ljava/lang/Object;Ljava/util/function/BiFunction;)Ljava/lang/Object;"},
+            {"matrix", "([[D[I[[[Ljava/lang/String;)[[J"},
+            {"wide", "(BCDFIJSZ)V"},
+    };
+
+    private Method[] methods;
+
+    @Setup
+    public void setUp() {
+        methods = String.class.getDeclaredMethods();
+    }
+
+    @Benchmark
+    public void parseMethodDescriptor(Blackhole blackhole) {
+        for (String[] method : DESCRIPTORS) {
+            blackhole.consume(ClassMethodTable.parseMethodDescriptor(method[0], method[1]));
+        }
+    }
+
+    @Benchmark
+    public void methodSignature(Blackhole blackhole) {
+        for (Method method : methods) {
+            blackhole.consume(ClassMethodTable.methodSignature(method));
+        }
+    }
+
+    @Benchmark
+    public void methodDescriptor(Blackhole blackhole) {
+        for (Method method : methods) {
+            blackhole.consume(ClassMethodTable.methodDescriptor(method));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.steammachine.methodtable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище данных о расположении методов, заполняемое агентом по байтам загружаемых классов.
+ * <p>
+ * Данные хранятся по загрузчику и имени класса: классы с одним именем из разных загрузчиков не
+ * смешиваются. Загрузчики удерживаются слабыми ссылками, поэтому данные выгруженных загрузчиков
+ * освобождаются вместе с ними. Классы загрузчика начальной загрузки хранятся отдельно.
+ *
+ * @author Vladimir Bogodukhov
+ * @see ClassIndexingTransformer
+ */
+public final class AgentPositionStore {
+
+    private final Map<String, MethodPositionTable> bootstrapClasses = new ConcurrentHashMap<>();
+    private final Map<ClassLoader, Map<String, MethodPositionTable>> loaders =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param loader    загрузчик класса, null - загрузчик начальной загрузки
+     * @param className имя класса в формате {@link Class#getName()}
+     * @return данные о расположении методов или null, если класс не проиндексирован
+     */
+    public MethodPositionTable get(ClassLoader loader, String className) {
+        Objects.requireNonNull(className);
+        Map<String, MethodPositionTable> classes = classes(loader, false);
+        return classes != null ? classes.get(className) : null;
+    }
+
+    /**
+     * @param clazz загруженный класс
+     * @return данные о расположении методов или null, если класс не проиндексирован
+     */
+    public MethodPositionTable get(Class<?> clazz) {
+        Objects.requireNonNull(clazz);
+        return get(clazz.getClassLoader(), clazz.getName());
+    }
+
+    /**
+     * @return количество проиндексированных классов всех живых загрузчиков
+     */
+    public int size() {
+        int size = bootstrapClasses.size();
+        synchronized (loaders) {
+            for (Map<String, MethodPositionTable> classes : loaders.values()) {
+                size += classes.size();
+            }
+        }
+        return size;
+    }
+
+    void put(ClassLoader loader, String className, MethodPositionTable table) {
+        classes(loader, true).put(className, table);
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private Map<String, MethodPositionTable> classes(ClassLoader loader, boolean create) {
+        if (loader == null) {
+            return bootstrapClasses;
+        }
+        if (!create) {
+            return loaders.get(loader);
+        }
+        synchronized (loaders) {
+            return loaders.computeIfAbsent(loader, key -> new ConcurrentHashMap<>());
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Индекс каталога с классами, который обновляется по событиям {@link WatchService}. <p>
+ * При запуске каталог индексируется полностью через {@link ClasspathIndexer}, затем заново
+ * разбираются только созданные и измененные файлы классов, а данные удаленных файлов и
+ * каталогов удаляются из индекса. События, пришедшие с интервалом меньше заданной паузы,
+ * обрабатываются одной пачкой - пересборка, записывающая сотни файлов, приводит к одному
+ * обновлению. Пачка применяется не позже заданной задержки от первого события и не больше
+ * {@value #MAX_BATCH_SIZE} изменений, так что непрерывный поток событий (например долгая
+ * сборка) не откладывает обновления бесконечно. Каждое обновление публикует новый
+ * неизменяемый снимок индекса заменой ссылки, поэтому читатели не блокируются и всегда видят
+ * согласованное состояние. При переполнении очереди событий каталог индексируется заново.
+ * Ошибки чтения отдельных файлов и каталогов передаются обработчику ошибок и не останавливают
+ * наблюдение.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public class ClassDirectoryWatcher implements Closeable {
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 50;
+    private static final long DEFAULT_MAX_BATCH_MILLIS = 1000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+
+    private final Path directory;
+    private final long debounceMillis;
+    private final long maxBatchMillis;
+    private final BiConsumer<String, Throwable> errorHandler;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * каталоги под наблюдением, изменяется только потоком наблюдения после {@link #start()}
+     */
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    /**
+     * индекс и его номер публикуются одной записью
+     */
+    private volatile Snapshot current = new Snapshot(Collections.emptyMap(), 0);
+
+    /**
+     * @param directory каталог с классами
+     */
+    public ClassDirectoryWatcher(Path directory) throws IOException {
+        this(directory, DEFAULT_DEBOUNCE_MILLIS, (source, error) -> {
+        });
+    }
+
+    /**
+     * @param directory      каталог с классами
+     * @param debounceMillis пауза без событий, после которой накопленные изменения применяются
+     * @param errorHandler   получает путь к файлу и ошибку для каждого класса, который не
+     *                       удалось прочитать
+     */
+    public ClassDirectoryWatcher(Path directory, long debounceMillis,
+            BiConsumer<String, Throwable> errorHandler) throws IOException {
+        this(directory, debounceMillis, Math.max(debounceMillis, DEFAULT_MAX_BATCH_MILLIS),
+                errorHandler);
+    }
+
+    /**
+     * @param directory      каталог с классами
+     * @param debounceMillis пауза без событий, после которой накопленные изменения применяются
+     * @param maxBatchMillis наибольшая задержка применения изменений от первого события пачки
+     * @param errorHandler   получает путь к файлу и ошибку для каждого класса или каталога,
+     *                       который не удалось прочитать
+     */
+    public ClassDirectoryWatcher(Path directory, long debounceMillis, long maxBatchMillis,
+            BiConsumer<String, Throwable> errorHandler) throws IOException {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.debounceMillis = debounceMillis;
+        this.maxBatchMillis = maxBatchMillis;
+        this.errorHandler = Objects.requireNonNull(errorHandler);
+        this.watchService = this.directory.getFileSystem().newWatchService();
+        this.thread = new Thread(this::run, "linemapper-watch-" + this.directory.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Проиндексировать каталог и начать наблюдение за ним.
+     *
+     * @return этот же экземпляр
+     */
+    public ClassDirectoryWatcher start() throws IOException {
+        /* каталоги регистрируются до индексации, чтобы не потерять изменения во время нее */
+        registerAll(directory);
+        publish(indexAll());
+        thread.start();
+        return this;
+    }
+
+    /**
+     * @return неизменяемый снимок индекса: данные о расположении методов по именам классов
+     */
+    public Map<String, Map<String, SourceCodePosition>> snapshot() {
+        return current.classes();
+    }
+
+    /**
+     * @return номер снимка, увеличивается с каждым опубликованным обновлением
+     */
+    public long generation() {
+        return current.generation();
+    }
+
+    /**
+     * @return текущий снимок индекса вместе с его номером
+     */
+    public Snapshot current() {
+        return current;
+    }
+
+    /**
+     * Опубликованное состояние индекса: отдельные вызовы {@link #snapshot()} и
+     * {@link #generation()} могут попасть на разные обновления, данные снимка - нет.
+     */
+    public static final class Snapshot {
+
+        private final Map<String, Map<String, SourceCodePosition>> classes;
+        private final long generation;
+
+        private Snapshot(Map<String, Map<String, SourceCodePosition>> classes, long generation) {
+            this.classes = classes;
+            this.generation = generation;
+        }
+
+        /**
+         * @return неизменяемые данные о расположении методов по именам классов
+         */
+        public Map<String, Map<String, SourceCodePosition>> classes() {
+            return classes;
+        }
+
+        /**
+         * @return номер снимка
+         */
+        public long generation() {
+            return generation;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private void run() {
+        try {
+            while (true) {
+                Map<Path, WatchEvent.Kind<?>> changes = new LinkedHashMap<>();
+                boolean overflow = collect(watchService.take(), changes);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchMillis);
+                long remaining;
+                while (changes.size() < MAX_BATCH_SIZE
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    WatchKey key = watchService.poll(
+                            Math.min(TimeUnit.MILLISECONDS.toNanos(debounceMillis), remaining),
+                            TimeUnit.NANOSECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    overflow |= collect(key, changes);
+                }
+                try {
+                    apply(changes, overflow);
+                } catch (RuntimeException e) {
+                    /* поток наблюдения не должен останавливаться из-за одной пачки */
+                    errorHandler.accept(directory.toString(), e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // наблюдение остановлено
+        }
+    }
+
+    /**
+     * @return было ли переполнение очереди событий
+     */
+    private boolean collect(WatchKey key, Map<Path, WatchEvent.Kind<?>> changes) {
+        boolean overflow = false;
+        Path parent = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (parent != null) {
+                changes.put(parent.resolve((Path) event.context()), event.kind());
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return overflow;
+    }
+
+    private void apply(Map<Path, WatchEvent.Kind<?>> changes, boolean overflow) {
+        Map<String, Map<String, SourceCodePosition>> next;
+        if (overflow) {
+            try {
+                registerAll(directory);
+            } catch (IOException | RuntimeException e) {
+                errorHandler.accept(directory.toString(), e);
+            }
+            next = indexAll();
+        } else {
+            next = new HashMap<>(current.classes());
+            for (Map.Entry<Path, WatchEvent.Kind<?>> change : changes.entrySet()) {
+                Path path = change.getKey();
+                if (Files.isDirectory(path)) {
+                    addDirectory(path, next);
+                } else if (ClasspathIndexer.isClassFile(path.toString())) {
+                    if (Files.isRegularFile(path)) {
+                        parse(path, next);
+                    } else {
+                        next.remove(className(path));
+                    }
+                } else if (change.getValue() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    /* удаленный каталог - события о его файлах могут не прийти */
+                    String prefix = className(path) + ".";
+                    next.keySet().removeIf(name -> name.startsWith(prefix));
+                }
+            }
+        }
+        publish(next);
+    }
+
+    private void addDirectory(Path path, Map<String, Map<String, SourceCodePosition>> next) {
+        try {
+            registerAll(path);
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(path)) {
+                files = stream.filter(file -> ClasspathIndexer.isClassFile(file.toString()))
+                        .filter(Files::isRegularFile)
+                        .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                parse(file, next);
+            }
+        } catch (IOException | RuntimeException e) {
+            /* каталог мог быть удален во время обхода - Files.walk бросает UncheckedIOException */
+            errorHandler.accept(path.toString(), e);
+        }
+    }
+
+    private void parse(Path file, Map<String, Map<String, SourceCodePosition>> next) {
+        try (InputStream stream = Files.newInputStream(file)) {
+            next.put(className(file),
+                    Collections.unmodifiableMap(ClassMethodTable.readClassFromInputStream(stream)));
+        } catch (IOException | RuntimeException e) {
+            /* файл мог быть записан не полностью - прежние данные остаются до следующего события */
+            errorHandler.accept(file.toString(), e);
+        }
+    }
+
+    private Map<String, Map<String, SourceCodePosition>> indexAll() {
+        return new ClasspathIndexer(ForkJoinPool.commonPool(), errorHandler)
+                .index(Collections.singletonList(directory));
+    }
+
+    private void registerAll(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            for (Path path : stream.filter(Files::isDirectory).collect(Collectors.toList())) {
+                WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                keys.put(key, path);
+            }
+        }
+    }
+
+    private void publish(Map<String, Map<String, SourceCodePosition>> next) {
+        /* изменяется только одним потоком - чтение и запись номера не пересекаются */
+        current = new Snapshot(Collections.unmodifiableMap(next), current.generation() + 1);
+    }
+
+    private String className(Path path) {
+        String resourceName = directory.relativize(path).toString()
+                .replace(path.getFileSystem().getSeparator(), "/");
+        return ClasspathIndexer.isClassFile(resourceName)
+                ? ClasspathIndexer.className(resourceName) : resourceName.replace('/', '.');
+    }
+}
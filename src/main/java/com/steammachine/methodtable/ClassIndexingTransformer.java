@@ -0,0 +1,138 @@
+package com.steammachine.methodtable;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ClassFileTransformer}, который не изменяет классы, а передает их байты на индексацию.
+ * <p>
+ * Байты класса уже находятся в памяти, поэтому индексация не читает файлов и работает для
+ * классов, сгенерированных во время выполнения, классов из вложенных jar и удаленных
+ * загрузчиков. Загрузка класса не ждет разбора: байты помещаются в ограниченную очередь, а при
+ * ее переполнении класс пропускается и учитывается в {@link #dropped()}. Очередь разбирает
+ * один фоновый поток-демон, результат попадает в {@link AgentPositionStore}. Массив байт
+ * класса не изменяется и не копируется.
+ *
+ * @author Vladimir Bogodukhov
+ * @see PositionAgent
+ */
+public final class ClassIndexingTransformer implements ClassFileTransformer {
+
+    private final AgentPositionStore store;
+    private final BlockingQueue<LoadedClass> queue;
+    private final Thread worker;
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param store    хранилище для результатов индексации
+     * @param capacity размер очереди классов, ожидающих разбора
+     */
+    public ClassIndexingTransformer(AgentPositionStore store, int capacity) {
+        this.store = Objects.requireNonNull(store);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::run, "linemapper-class-indexer");
+        this.worker.setDaemon(true);
+        /* класс элемента очереди загружается заранее - иначе его загрузка из transform снова
+           вызвала бы transform для него же */
+        LoadedClass.class.getName();
+    }
+
+    /**
+     * запустить фоновый разбор очереди
+     *
+     * @return этот же экземпляр
+     */
+    public ClassIndexingTransformer start() {
+        worker.start();
+        return this;
+    }
+
+    /**
+     * остановить фоновый разбор, классы, оставшиеся в очереди, не разбираются
+     */
+    public void stop() {
+        worker.interrupt();
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        /* скрытые и анонимные классы приходят без имени - по имени их нельзя найти */
+        if (className != null && classfileBuffer != null) {
+            if (!queue.offer(new LoadedClass(loader, className, classfileBuffer))) {
+                dropped.increment();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return количество проиндексированных классов
+     */
+    public long indexed() {
+        return indexed.sum();
+    }
+
+    /**
+     * @return количество классов, пропущенных из-за переполнения очереди
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return количество классов, которые не удалось разобрать
+     */
+    public long failed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return количество классов, ожидающих разбора
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            LoadedClass loaded;
+            try {
+                loaded = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                MethodPositionTable table = ClassMethodTable.parseView(
+                        ByteBuffer.wrap(loaded.bytes), ClassView::methodTable,
+                        result -> result.asMap().values());
+                store.put(loaded.loader, loaded.className.replace('/', '.'), table);
+                indexed.increment();
+            } catch (RuntimeException e) {
+                failed.increment();
+            }
+        }
+    }
+
+    private static final class LoadedClass {
+
+        private final ClassLoader loader;
+        private final String className;
+        private final byte[] bytes;
+
+        private LoadedClass(ClassLoader loader, String className, byte[] bytes) {
+            this.loader = loader;
+            this.className = className;
+            this.bytes = bytes;
+        }
+    }
+}
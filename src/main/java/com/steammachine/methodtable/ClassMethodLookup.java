@@ -0,0 +1,156 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Данные о расположении методов загруженного класса, подготовленные для частого поиска. <p>
+ * Поиск по имени и дескриптору метода идет по хеш-таблице с открытой адресацией и использует
+ * только кешированные хеш-коды строк. Соответствие {@link Method} - расположение строится один
+ * раз при первом обращении, после чего поиск по методу не создает объектов.
+ *
+ * @author Vladimir Bogodukhov
+ */
+final class ClassMethodLookup {
+
+    static final ClassMethodLookup EMPTY = new ClassMethodLookup(new String[0], new String[0],
+            new SourceCodePosition[0]);
+
+    private final String[] names;
+    private final String[] descriptors;
+    private final SourceCodePosition[] positions;
+
+    /**
+     * индексы методов, увеличенные на 1, в хеш-таблице с открытой адресацией, 0 - пустая ячейка
+     */
+    private final int[] slots;
+
+    private final MethodPositionTable table;
+
+    private volatile Map<Method, Integer> methods;
+
+    private ClassMethodLookup(String[] names, String[] descriptors,
+            SourceCodePosition[] positions) {
+        this.names = names;
+        this.descriptors = descriptors;
+        this.positions = positions;
+
+        int capacity = Integer.highestOneBit(Math.max(names.length, 1) * 2 + 1);
+        this.slots = new int[capacity];
+        int mask = capacity - 1;
+        String[] signatures = new String[names.length];
+        int[] lineNumbers = new int[names.length];
+        int[] orders = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            int slot = hash(names[i], descriptors[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+
+            signatures[i] = SignatureCache.shared().signature(names[i], descriptors[i]);
+            lineNumbers[i] = positions[i].hasPosition() ? positions[i].minLineNumber() : -1;
+            orders[i] = positions[i].order();
+        }
+        this.table = MethodPositionTable.sorted(signatures, lineNumbers, orders, null, null,
+                null);
+    }
+
+    static ClassMethodLookup of(ClassView view) {
+        int methodCount = view.methodCount();
+        String[] names = new String[methodCount];
+        String[] descriptors = new String[methodCount];
+        SourceCodePosition[] positions = new SourceCodePosition[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            names[i] = view.methodName(i);
+            descriptors[i] = view.methodDescriptor(i);
+            positions[i] = view.position(i);
+        }
+        return new ClassMethodLookup(names, descriptors, positions);
+    }
+
+    MethodPositionTable table() {
+        return table;
+    }
+
+    /**
+     * @return количество методов в файле класса
+     */
+    int methodCount() {
+        return positions.length;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     */
+    SourceCodePosition position(int index) {
+        return positions[index];
+    }
+
+    /**
+     * @return данные о расположении метода или null, если метод не найден
+     */
+    SourceCodePosition get(String name, String descriptor) {
+        int index = indexOf(name, descriptor);
+        return index >= 0 ? positions[index] : null;
+    }
+
+    /**
+     * @param method метод класса, для которого построена таблица
+     * @return данные о расположении метода или null, если метод не найден
+     */
+    SourceCodePosition get(Method method) {
+        int index = indexOf(method);
+        return index >= 0 ? positions[index] : null;
+    }
+
+    /**
+     * @return порядковый номер метода в файле класса или -1, если метод не найден
+     */
+    int indexOf(String name, String descriptor) {
+        int mask = slots.length - 1;
+        int slot = hash(name, descriptor) & mask;
+        int index;
+        while ((index = slots[slot]) != 0) {
+            if (names[index - 1].equals(name) && descriptors[index - 1].equals(descriptor)) {
+                return index - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param method метод класса, для которого построена таблица
+     * @return порядковый номер метода в файле класса или -1, если метод не найден
+     */
+    int indexOf(Method method) {
+        if (names.length == 0) {
+            /* пустая таблица общая для всех классов без данных - соответствие в ней не строится */
+            return -1;
+        }
+        Map<Method, Integer> methods = this.methods;
+        if (methods == null) {
+            methods = new HashMap<>();
+            for (Method declared : method.getDeclaringClass().getDeclaredMethods()) {
+                int index = indexOf(declared.getName(), ClassMethodTable.methodDescriptor(declared));
+                if (index >= 0) {
+                    methods.put(declared, index);
+                }
+            }
+            this.methods = methods;
+        }
+        Integer index = methods.get(method);
+        if (index == null) {
+            return indexOf(method.getName(), ClassMethodTable.methodDescriptor(method));
+        }
+        return index;
+    }
+
+    private static int hash(String name, String descriptor) {
+        int hash = name.hashCode() * 31 + descriptor.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,12 +1,21 @@
 package com.steammachine.methodtable;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * Created by Vladimir Bogodukhov on 06.04.16.
@@ -108,7 +117,7 @@ public class ClassMethodTable {
     /**
      * Константы классовых элементов
      */
-    private static class CCIC {
+    static class CCIC {
 
         public static final int CLASS_MAGIC_NUMBER = 0xCAFEBABE;
         public static final byte Constant_Utf8 = 1;
@@ -125,6 +134,18 @@ public class ClassMethodTable {
         public static final byte Constant_MethodHandle = 15;
         public static final byte Constant_MethodType = 16;
         public static final byte Constant_InvokeDynamic = 18;
+
+        /* имена атрибутов в модифицированной кодировке UTF-8 - для сравнения без декодирования */
+        static final byte[] ATTRIBUTE_CODE = ascii("Code");
+        static final byte[] ATTRIBUTE_LINE_NUMBER_TABLE = ascii("LineNumberTable");
+        static final byte[] ATTRIBUTE_SOURCE_FILE = ascii("SourceFile");
+        static final byte[] ATTRIBUTE_INNER_CLASSES = ascii("InnerClasses");
+        static final byte[] ATTRIBUTE_NEST_HOST = ascii("NestHost");
+        static final byte[] ATTRIBUTE_NEST_MEMBERS = ascii("NestMembers");
+
+        private static byte[] ascii(String value) {
+            return value.getBytes(StandardCharsets.US_ASCII);
+        }
     }
 
 
@@ -191,11 +212,23 @@ public class ClassMethodTable {
 
     private static class Constant_Utf8_Info extends Const {
 
-        private final String data;
+        /**
+         * байты строки в модифицированной кодировке UTF-8, строка декодируется при первом
+         * обращении
+         */
+        private final byte[] bytes;
+        private String data;
 
-        private Constant_Utf8_Info(byte tag, String data) {
+        private Constant_Utf8_Info(byte tag, byte[] bytes) {
             super(tag);
-            this.data = data;
+            this.bytes = bytes;
+        }
+
+        private String data() {
+            if (data == null) {
+                data = decodeUTF(bytes, 0, bytes.length);
+            }
+            return data;
         }
     }
 
@@ -242,19 +275,181 @@ public class ClassMethodTable {
      * Используется для тех случаев, когда в коде метода нет данных о том где он расположен в
      * исходнике.
      */
-    private static final SourceCodePosition NO_POSITION = new DefaultSourceCodePosition(-1, -1,
+    static final SourceCodePosition NO_POSITION = new DefaultSourceCodePosition(-1, -1,
             false);
 
+    /**
+     * Данные о расположении методов загруженных классов. Значения хранятся вместе с классом и
+     * освобождаются при его выгрузке.
+     */
+    private static final ClassValue<ClassMethodLookup> LOOKUPS =
+            new ClassValue<ClassMethodLookup>() {
+                @Override
+                protected ClassMethodLookup computeValue(Class<?> type) {
+                    try {
+                        return loadLookup(type);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+
+    /**
+     * Начиная с этого размера файл класса отображается в память, а не читается в кучу.
+     */
+    private static final int MAPPING_THRESHOLD = 256 * 1024;
+
 
     /**
-     * прочитать данные о расположении методов из класса
+     * прочитать данные о расположении методов из класса. <p>
+     * Разбор идет через {@link ClassMethodTableParser} текущего потока, рабочие буферы которого
+     * используются повторно.
      *
      * @param data поток с данными класса
      * @return данные о расположении методов из класса
      */
     public static Map<String, SourceCodePosition> readClassFromInputStream(InputStream data)
             throws IOException {
-        return readClassFromDataInputStream(new DataInputStream(data));
+        return ClassMethodTableParser.forCurrentThread().parse(data);
+    }
+
+    /**
+     * прочитать данные о расположении методов из буфера с данными класса. <p>
+     * Разбор идет непосредственно по буферу (heap, direct или полученному через
+     * {@link FileChannel#map}) через {@link ClassView}, атрибуты пропускаются по смещениям без
+     * копирования. Позиция и порядок байт самого буфера не изменяются - класс читается начиная с
+     * его текущей позиции.
+     *
+     * @param data буфер с данными класса
+     * @return данные о расположении методов из класса
+     */
+    public static Map<String, SourceCodePosition> readClassFromByteBuffer(ByteBuffer data) {
+        return parseView(data, ClassView::positions, Map::values);
+    }
+
+    /**
+     * прочитать данные о расположении методов из файла класса. <p>
+     * Большие файлы отображаются в память через {@link FileChannel#map}, небольшие читаются в
+     * буфер в куче одним вызовом - отображение маленьких файлов обходится дороже чтения и держит
+     * адресное пространство до сборки мусора.
+     *
+     * @param path путь к файлу класса
+     * @return данные о расположении методов из класса
+     */
+    public static Map<String, SourceCodePosition> readClassFromPath(Path path)
+            throws IOException {
+        return parseView(readClassBuffer(path), ClassView::positions, Map::values);
+    }
+
+    /**
+     * прочитать данные о расположении методов вместе со сведениями о классе (суперкласс,
+     * интерфейсы, файл исходника, вложенные классы и члены гнезда) за один проход по классу.
+     *
+     * @param data поток с данными класса
+     * @return таблица методов и сведения о классе
+     */
+    public static ClassPositions readClassPositions(InputStream data) throws IOException {
+        return ClassMethodTableParser.forCurrentThread().parseClass(data, -1);
+    }
+
+    /**
+     * прочитать данные о расположении методов вместе со сведениями о классе из файла класса
+     *
+     * @param path путь к файлу класса
+     * @return таблица методов и сведения о классе, источник - путь к файлу
+     */
+    public static ClassPositions readClassPositions(Path path) throws IOException {
+        return parseView(readClassBuffer(path), view -> view.classPositions(path.toString()),
+                positions -> positions.positions().values());
+    }
+
+    /**
+     * передать методы класса посетителю по мере их разбора. Если посетитель останавливает
+     * разбор, оставшиеся методы и атрибуты класса не читаются.
+     *
+     * @param data    поток с данными класса
+     * @param visitor посетитель
+     * @return true, если класс прочитан полностью, false - если разбор остановлен посетителем
+     */
+    public static boolean visitClass(InputStream data, MethodPositionVisitor visitor)
+            throws IOException {
+        Objects.requireNonNull(visitor);
+        return visitDataInputStream(new DataInputStream(data), visitor);
+    }
+
+    /**
+     * передать методы класса посетителю по мере их разбора. Если посетитель останавливает
+     * разбор, оставшиеся методы не разбираются. Позиция и порядок байт буфера не изменяются.
+     *
+     * @param data    буфер с данными класса
+     * @param visitor посетитель
+     * @return true, если посетитель получил все методы, false - если разбор остановлен
+     */
+    public static boolean visitClass(ByteBuffer data, MethodPositionVisitor visitor) {
+        Objects.requireNonNull(visitor);
+        return ClassView.scan(data).visit(visitor);
+    }
+
+    /**
+     * получить данные о расположении методов загруженного класса. <p>
+     * Файл класса читается через ресурсы загрузчика самого класса и разбирается один раз,
+     * результат запоминается в {@link ClassValue} и освобождается при выгрузке класса.
+     *
+     * @param clazz класс
+     * @return неизменяемые данные о расположении методов класса или пустые данные, если файл
+     * класса недоступен (массивы, примитивы, классы сгенерированные во время выполнения)
+     * @throws UncheckedIOException если файл класса не удалось прочитать
+     */
+    public static Map<String, SourceCodePosition> positionsOf(Class<?> clazz) {
+        Objects.requireNonNull(clazz);
+        return lookup(clazz).table().asMap();
+    }
+
+    /**
+     * получить данные о расположении метода. <p>
+     * Соответствие методов класса и их расположения запоминается вместе с данными класса, поэтому
+     * повторный поиск не строит сигнатур и не создает объектов.
+     *
+     * @param method метод
+     * @return данные о расположении метода или данные без позиции, если они недоступны
+     * @see #positionsOf(Class)
+     */
+    public static SourceCodePosition positionOf(Method method) {
+        Objects.requireNonNull(method);
+        SourceCodePosition position = lookup(method.getDeclaringClass()).get(method);
+        return position != null ? position : NO_POSITION;
+    }
+
+    /**
+     * получить данные о расположении метода по его имени и дескриптору
+     *
+     * @param clazz      класс, в котором объявлен метод
+     * @param name       имя метода
+     * @param descriptor дескриптор метода в формате JVM, например {@code (ILjava/lang/String;)V}
+     * @return данные о расположении метода или данные без позиции, если они недоступны
+     * @see #methodDescriptor(Method)
+     */
+    public static SourceCodePosition positionOf(Class<?> clazz, String name, String descriptor) {
+        Objects.requireNonNull(clazz);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(descriptor);
+        SourceCodePosition position = lookup(clazz).get(name, descriptor);
+        return position != null ? position : NO_POSITION;
+    }
+
+    /**
+     * представить метод в виде дескриптора JVM, например {@code (ILjava/lang/String;)V}
+     */
+    public static String methodDescriptor(Method method) {
+        Objects.requireNonNull(method);
+        StringBuilder builder = new StringBuilder();
+        builder.append('(');
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            appendTypeDescriptor(builder, parameterType);
+        }
+        builder.append(')');
+        appendTypeDescriptor(builder, method.getReturnType());
+        return builder.toString();
     }
 
     /**
@@ -295,12 +490,25 @@ public class ClassMethodTable {
      */
     protected static Map<String, SourceCodePosition> readClassFromDataInputStream(
             DataInputStream data) throws IOException {
+        Map<String, SourceCodePosition> result = new HashMap<>();
+        visitDataInputStream(data, (name, descriptor, accessFlags, position) -> {
+            result.put(SignatureCache.shared().signature(name, descriptor), position);
+            return true;
+        });
+        return result;
+    }
+
+    /**
+     * @param data    - datastream to read from
+     * @param visitor - receives methods as they are parsed
+     * @return - false if the visitor stopped parsing, the rest of the class is left unread
+     */
+    protected static boolean visitDataInputStream(DataInputStream data,
+            MethodPositionVisitor visitor) throws IOException {
         if (data.readInt() != CCIC.CLASS_MAGIC_NUMBER) {
             throw new IllegalStateException(" is not a Java .class file");
         }
 
-        Map<String, SourceCodePosition> result = new HashMap<>();
-
         data.readUnsignedShort(); // minor
         data.readUnsignedShort(); // major
 
@@ -401,7 +609,9 @@ public class ClassMethodTable {
                 }
 
                 case CCIC.Constant_Utf8: {
-                    c[i] = new Constant_Utf8_Info(tag, data.readUTF());
+                    byte[] bytes = new byte[data.readUnsignedShort()];
+                    data.readFully(bytes);
+                    c[i] = new Constant_Utf8_Info(tag, bytes);
                     // u2 length; u1 bytes[length];
                     break;
                 }
@@ -455,18 +665,17 @@ public class ClassMethodTable {
 
         int methodCount = data.readUnsignedShort();//u2  methods_count;
         for (int i = 0; i < methodCount; i++) {
-            data.readUnsignedShort();// u2 access_flags
+            int accessFlags = data.readUnsignedShort();// u2 access_flags
 
             String methodName = stringDataInfo(data.readUnsignedShort(),
                     c);// u2             name_index;
             String dataInfo = stringDataInfo(data.readUnsignedShort(),
                     c);  // u2             descriptor_index;
-            String methodSignature = parseMethodDescriptor(methodName, dataInfo);
 
             SourceCodePosition position = NO_POSITION;
             int attributesCount = data.readUnsignedShort(); // u2             attributes_count;
             for (int j = 0; j < attributesCount; j++) {
-                String attributeName = stringDataInfo(data.readUnsignedShort(), c);
+                int attributeNameIndex = data.readUnsignedShort();
 /*
                 if ("Signature".equals(attributeName)) {
                     // u2 attribute_name_index; <----  Уже прочитан
@@ -478,22 +687,24 @@ public class ClassMethodTable {
                     break;
                 } else
 */
-                if ("Code".equals(attributeName)) {
+                if (utf8Matches(attributeNameIndex, c, CCIC.ATTRIBUTE_CODE)) {
                     position = readCodeAttribute(data, i, c);
                 } else {
                     skipAttribute(data);
                 }
             }
-            result.put(methodSignature, position);
+            if (!visitor.visitMethod(methodName, dataInfo, accessFlags, position)) {
+                return false;
+            }
         }
 
         int attributesCount = data.readUnsignedShort(); // u2 attributes_count;
         for (int j = 0; j < attributesCount; j++) {
-            stringDataInfo(data.readUnsignedShort(), c);// attributeName
+            data.readUnsignedShort();// attributeName
             skipAttribute(data);
         }
 
-        return result;
+        return true;
     }
 
     /* ----------------------------------------------- privates --------------------------------------------------------- */
@@ -507,6 +718,17 @@ public class ClassMethodTable {
 
 
     private static String stringDataInfo(int constantIndex, Const[] consts) {
+        return utf8Info(constantIndex, consts).data();
+    }
+
+    /**
+     * сравнивает строковую константу с образцом побайтно, не декодируя ее
+     */
+    private static boolean utf8Matches(int constantIndex, Const[] consts, byte[] pattern) {
+        return Arrays.equals(utf8Info(constantIndex, consts).bytes, pattern);
+    }
+
+    private static Constant_Utf8_Info utf8Info(int constantIndex, Const[] consts) {
         if (constantIndex < 0 || constantIndex >= consts.length) {
             throw new IllegalStateException("illegal interface index : " + constantIndex);
         }
@@ -516,8 +738,7 @@ public class ClassMethodTable {
         if (consts[constantIndex].tag != CCIC.Constant_Utf8) {
             throw new IllegalStateException("");
         }
-        Constant_Utf8_Info utf8_info = (Constant_Utf8_Info) consts[constantIndex];
-        return utf8_info.data;
+        return (Constant_Utf8_Info) consts[constantIndex];
     }
 
     private static SourceCodePosition readCodeAttribute(
@@ -541,9 +762,8 @@ public class ClassMethodTable {
         SourceCodePosition result = NO_POSITION;
         int attributes_count = data.readUnsignedShort(); //        * u2 attributes_count;
         for (int j = 0; j < attributes_count; j++) {
-            String attributeName = stringDataInfo(data.readUnsignedShort(),
-                    c); // u2 attribute_name_index;
-            if ("LineNumberTable".equals(attributeName)) {
+            int attributeNameIndex = data.readUnsignedShort(); // u2 attribute_name_index;
+            if (utf8Matches(attributeNameIndex, c, CCIC.ATTRIBUTE_LINE_NUMBER_TABLE)) {
                 result = readCodeOrder(data, order);
             } else {
                 skipAttribute(data);
@@ -615,6 +835,216 @@ public class ClassMethodTable {
         }
     }
 
+    /**
+     * @return запомненные данные о расположении методов загруженного класса
+     */
+    static ClassMethodLookup lookup(Class<?> clazz) {
+        return LOOKUPS.get(clazz);
+    }
+
+    private static ClassMethodLookup loadLookup(Class<?> type) throws IOException {
+        if (type.isArray() || type.isPrimitive()) {
+            return ClassMethodLookup.EMPTY;
+        }
+        String resourceName = type.getName().replace('.', '/') + ".class";
+        ClassLoader loader = type.getClassLoader();
+        try (InputStream stream = loader != null ? loader.getResourceAsStream(resourceName)
+                : ClassLoader.getSystemResourceAsStream(resourceName)) {
+            if (stream == null) {
+                return ClassMethodLookup.EMPTY;
+            }
+            return parseView(ByteBuffer.wrap(readFully(stream, -1)), ClassMethodLookup::of,
+                    lookup -> lookup.table().asMap().values());
+        }
+    }
+
+    private static void appendTypeDescriptor(StringBuilder builder, Class<?> type) {
+        if (type.isArray()) {
+            builder.append(type.getName().replace('.', '/'));
+        } else if (!type.isPrimitive()) {
+            builder.append('L').append(type.getName().replace('.', '/')).append(';');
+        } else if (type == int.class) {
+            builder.append('I');
+        } else if (type == void.class) {
+            builder.append('V');
+        } else if (type == boolean.class) {
+            builder.append('Z');
+        } else if (type == long.class) {
+            builder.append('J');
+        } else if (type == byte.class) {
+            builder.append('B');
+        } else if (type == char.class) {
+            builder.append('C');
+        } else if (type == short.class) {
+            builder.append('S');
+        } else if (type == float.class) {
+            builder.append('F');
+        } else {
+            builder.append('D');
+        }
+    }
+
+    /**
+     * Разбирает класс через {@link ClassView} и учитывает разбор в {@link ParserMetrics}, если
+     * они включены. Неполные данные класса приводят к {@link IllegalStateException}, как в
+     * {@link ClassMethodTableParser}.
+     *
+     * @param parse     получает результат из представления класса
+     * @param positions данные о расположении методов результата - для счетчиков методов
+     */
+    static <T> T parseView(ByteBuffer data, Function<ClassView, T> parse,
+            Function<T, ? extends Iterable<SourceCodePosition>> positions) {
+        ParserMetrics metrics = ParserMetrics.active();
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            ClassView view = ClassView.of(data);
+            T result = parse.apply(view);
+            if (metrics != null) {
+                metrics.parsed(start, view.length(), view.constantCount(),
+                        positions.apply(result));
+            }
+            return result;
+        } catch (RuntimeException e) {
+            /* представление класса читает данные лениво - выход за границы возможен и здесь */
+            RuntimeException error = ClassView.truncated(e);
+            if (metrics != null) {
+                metrics.failed(error);
+            }
+            throw error;
+        }
+    }
+
+    /**
+     * Читает файл класса в буфер: большие файлы отображаются в память, небольшие читаются в кучу.
+     */
+    static ByteBuffer readClassBuffer(Path path) throws IOException {
+        Objects.requireNonNull(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException(path + " is too large for a Java .class file");
+            }
+            final ByteBuffer buffer;
+            if (size >= MAPPING_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException(path.toString());
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Читает поток до конца.
+     *
+     * @param sizeHint ожидаемый размер данных или -1, если он неизвестен
+     */
+    static byte[] readFully(InputStream stream, long sizeHint) throws IOException {
+        byte[] buffer = new byte[sizeHint >= 0 && sizeHint < Integer.MAX_VALUE
+                ? (int) sizeHint : 8192];
+        int count = 0;
+        while (true) {
+            if (count == buffer.length) {
+                int next = stream.read();
+                if (next < 0) {
+                    return buffer;
+                }
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, 8192));
+                buffer[count++] = (byte) next;
+            }
+            int read = stream.read(buffer, count, buffer.length - count);
+            if (read < 0) {
+                return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+            }
+            count += read;
+        }
+    }
+
+    /**
+     * Декодирует строку в модифицированной кодировке UTF-8 (формат {@link DataInputStream#readUTF})
+     *
+     * @param data   буфер с данными
+     * @param offset абсолютное смещение первого байта строки
+     * @param length длина строки в байтах
+     */
+    static String decodeUTF(ByteBuffer data, int offset, int length) {
+        if (offset + length > data.limit()) {
+            throw new IllegalStateException("unexpected end of class data");
+        }
+        if (data.hasArray()) {
+            return decodeUTF(data.array(), data.arrayOffset() + offset, length);
+        }
+
+        /* быстрый путь - имена классов, методов и дескрипторы почти всегда в ASCII */
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = data.get(offset + i);
+            if (b < 0) {
+                byte[] bytes = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    bytes[j] = data.get(offset + j);
+                }
+                return decodeUTF(bytes, 0, length);
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Декодирует строку в модифицированной кодировке UTF-8 (формат {@link DataInputStream#readUTF})
+     */
+    static String decodeUTF(byte[] data, int offset, int length) {
+        int end = offset + length;
+
+        /* быстрый путь - строка целиком в ASCII декодируется как ISO-8859-1 */
+        int index = offset;
+        while (index < end && data[index] >= 0) {
+            index++;
+        }
+        if (index == end) {
+            return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+        }
+
+        char[] chars = new char[length];
+        return new String(chars, 0, decodeUTF(data, offset, length, chars, 0));
+    }
+
+    /**
+     * Декодирует строку в модифицированной кодировке UTF-8 в массив символов.
+     *
+     * @param chars       массив для символов, в нем должно быть место для length символов
+     * @param charsOffset индекс первого символа в chars
+     * @return количество символов
+     */
+    static int decodeUTF(byte[] data, int offset, int length, char[] chars, int charsOffset) {
+        int end = offset + length;
+        int count = charsOffset;
+        for (int index = offset; index < end; ) {
+            int b = data[index] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                index++;
+            } else if ((b & 0xE0) == 0xC0 && index + 1 < end) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (data[index + 1] & 0x3F));
+                index += 2;
+            } else if ((b & 0xF0) == 0xE0 && index + 2 < end) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((data[index + 1] & 0x3F) << 6)
+                        | (data[index + 2] & 0x3F));
+                index += 3;
+            } else {
+                throw new IllegalStateException("malformed Utf8 constant at " + (index - offset));
+            }
+        }
+        return count - charsOffset;
+    }
+
     /**
      * Получает строковое представление типа по его представлению (в файле класса). <p> <p> <p>
      * BaseType   Character	   Type    Interpretation B          byte           signed byte C
@@ -0,0 +1,478 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Переиспользуемый разборщик файлов классов. <p>
+ * Экземпляр хранит рабочие буферы - данные класса, смещения таблицы констант и методов, символы
+ * дескриптора и построитель сигнатур - и использует их повторно для каждого следующего класса,
+ * поэтому в установившемся режиме разбор создает только объекты результата: отображение,
+ * строки сигнатур и данные о расположении. Сам файл класса читается через {@link ClassView},
+ * построенное поверх этих буферов; здесь строятся только сигнатуры - прямо из байт, без
+ * промежуточных строк. Экземпляр не потокобезопасен; для каждого потока есть свой экземпляр,
+ * доступный через {@link #forCurrentThread()}. Буферы, выросшие при разборе очень большого
+ * класса, после разбора не удерживаются.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class ClassMethodTableParser {
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * начальные и наибольшие удерживаемые после разбора размеры массивов смещений и символов
+     */
+    private static final int INITIAL_CONSTANTS = 256;
+    private static final int INITIAL_METHODS = 64;
+    private static final int INITIAL_CHARS = 256;
+    private static final int MAX_RETAINED_LENGTH = 16 * 1024;
+
+    private static final ThreadLocal<ClassMethodTableParser> PARSERS =
+            ThreadLocal.withInitial(ClassMethodTableParser::new);
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private ByteBuffer data = ByteBuffer.wrap(buffer);
+    private int limit;
+    private int[] constantOffsets = new int[INITIAL_CONSTANTS];
+    private int[] methodOffsets = new int[INITIAL_METHODS];
+    private int methodsWithLineNumbers;
+    private char[] chars = new char[INITIAL_CHARS];
+    private final StringBuilder builder = new StringBuilder(128);
+    private final SignatureCache signatures;
+    private final IntFunction<String> signatureOf = this::signature;
+
+    /**
+     * представление разбираемого класса поверх {@link #buffer}
+     */
+    private ClassView view;
+
+    /**
+     * разбор уже идет - вложенный вызов (например из посетителя) получает отдельный экземпляр
+     */
+    private boolean busy;
+
+    /**
+     * разборщик с общим кэшем сигнатур {@link SignatureCache#shared()}
+     */
+    public ClassMethodTableParser() {
+        this(SignatureCache.shared());
+    }
+
+    /**
+     * @param signatures кэш сигнатур методов
+     */
+    public ClassMethodTableParser(SignatureCache signatures) {
+        this.signatures = Objects.requireNonNull(signatures);
+    }
+
+    /**
+     * @return разборщик текущего потока
+     */
+    public static ClassMethodTableParser forCurrentThread() {
+        return PARSERS.get();
+    }
+
+    /**
+     * прочитать данные о расположении методов из класса
+     *
+     * @param data поток с данными класса, читается до конца и не закрывается
+     * @return данные о расположении методов из класса
+     */
+    public Map<String, SourceCodePosition> parse(InputStream data) throws IOException {
+        Objects.requireNonNull(data);
+        if (busy) {
+            return new ClassMethodTableParser().parse(data);
+        }
+        busy = true;
+        ParserMetrics metrics = ParserMetrics.active();
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            read(data, -1);
+            return measured(metrics, start, positions());
+        } catch (IOException e) {
+            throw failed(metrics, e);
+        } catch (RuntimeException e) {
+            throw failed(metrics, ClassView.truncated(e));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * прочитать данные о расположении методов из массива с данными класса
+     *
+     * @param data   массив с данными класса
+     * @param offset смещение начала класса
+     * @param length длина данных класса
+     * @return данные о расположении методов из класса
+     */
+    public Map<String, SourceCodePosition> parse(byte[] data, int offset, int length) {
+        Objects.requireNonNull(data);
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+        }
+        if (busy) {
+            return new ClassMethodTableParser().parse(data, offset, length);
+        }
+        busy = true;
+        ParserMetrics metrics = ParserMetrics.active();
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            ensureBuffer(length);
+            System.arraycopy(data, offset, buffer, 0, length);
+            limit = length;
+            return measured(metrics, start, positions());
+        } catch (RuntimeException e) {
+            throw failed(metrics, ClassView.truncated(e));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * прочитать данные о расположении методов из класса в компактную таблицу
+     *
+     * @param data     поток с данными класса, читается до конца и не закрывается
+     * @param sizeHint ожидаемый размер данных или -1, если он неизвестен
+     * @return компактная таблица расположения методов класса
+     */
+    public MethodPositionTable parseTable(InputStream data, long sizeHint) throws IOException {
+        Objects.requireNonNull(data);
+        if (busy) {
+            return new ClassMethodTableParser().parseTable(data, sizeHint);
+        }
+        busy = true;
+        ParserMetrics metrics = ParserMetrics.active();
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            read(data, sizeHint);
+            return measured(metrics, start, table());
+        } catch (IOException e) {
+            throw failed(metrics, e);
+        } catch (RuntimeException e) {
+            throw failed(metrics, ClassView.truncated(e));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Прочитать таблицу методов вместе со сведениями о классе (суперкласс, интерфейсы, файл
+     * исходника, вложенные классы и члены гнезда) за один проход.
+     *
+     * @param data     поток с данными класса, читается до конца и не закрывается
+     * @param sizeHint ожидаемый размер данных или -1, если он неизвестен
+     * @return таблица методов и сведения о классе, источник не задан
+     */
+    public ClassPositions parseClass(InputStream data, long sizeHint) throws IOException {
+        Objects.requireNonNull(data);
+        if (busy) {
+            return new ClassMethodTableParser().parseClass(data, sizeHint);
+        }
+        busy = true;
+        ParserMetrics metrics = ParserMetrics.active();
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            read(data, sizeHint);
+            MethodPositionTable table = table();
+            return measured(metrics, start, view.classPositions(null, table));
+        } catch (IOException e) {
+            throw failed(metrics, e);
+        } catch (RuntimeException e) {
+            throw failed(metrics, ClassView.truncated(e));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @return размер удерживаемого между разборами буфера данных класса
+     */
+    int retainedBufferSize() {
+        return Math.max(buffer.length, data.capacity());
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private MethodPositionTable table() {
+        MethodPositionTable table = open().methodTable(false, signatureOf);
+        methodsWithLineNumbers = 0;
+        for (int i = 0; i < table.size(); i++) {
+            methodsWithLineNumbers += table.hasPosition(i) ? 1 : 0;
+        }
+        return table;
+    }
+
+    private Map<String, SourceCodePosition> positions() {
+        ClassView view = open();
+        int methodCount = view.methodCount();
+        Map<String, SourceCodePosition> result = new HashMap<>(methodCount * 4 / 3 + 1);
+        methodsWithLineNumbers = 0;
+        for (int i = 0; i < methodCount; i++) {
+            SourceCodePosition position = view.position(i);
+            methodsWithLineNumbers += position.hasPosition() ? 1 : 0;
+            result.put(signature(i), position);
+        }
+        return result;
+    }
+
+    /**
+     * строит представление класса над прочитанными данными, массивы смещений представления
+     * остаются у разборщика для следующего класса
+     */
+    private ClassView open() {
+        if (data.array() != buffer) {
+            data = ByteBuffer.wrap(buffer);
+        }
+        data.clear();
+        data.limit(limit);
+        view = ClassView.of(data, constantOffsets, methodOffsets);
+        constantOffsets = view.constantOffsets();
+        methodOffsets = view.methodOffsets();
+        return view;
+    }
+
+    /**
+     * учитывает разобранный класс в метриках, если они включены
+     */
+    private <T> T measured(ParserMetrics metrics, long start, T result) {
+        if (metrics != null) {
+            metrics.parsed(start, limit, view.constantCount(), methodsWithLineNumbers,
+                    view.methodCount() - methodsWithLineNumbers);
+        }
+        return result;
+    }
+
+    /**
+     * учитывает ошибку разбора в метриках, если они включены
+     *
+     * @return та же ошибка
+     */
+    private static <E extends Exception> E failed(ParserMetrics metrics, E error) {
+        if (metrics != null) {
+            metrics.failed(error);
+        }
+        return error;
+    }
+
+    private void read(InputStream data, long sizeHint) throws IOException {
+        if (sizeHint > 0 && sizeHint < Integer.MAX_VALUE) {
+            ensureBuffer((int) sizeHint);
+        }
+        int count = 0;
+        while (true) {
+            if (count == buffer.length) {
+                ensureBuffer(count + 1);
+            }
+            int read = data.read(buffer, count, buffer.length - count);
+            if (read < 0) {
+                limit = count;
+                return;
+            }
+            count += read;
+        }
+    }
+
+    /**
+     * рабочие массивы, выросшие при разборе очень большого класса, заменяются исходными
+     */
+    private void release() {
+        busy = false;
+        limit = 0;
+        view = null;
+        if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+            /* обертка не должна удерживать выросший массив */
+            data = ByteBuffer.wrap(buffer);
+        }
+        if (constantOffsets.length > MAX_RETAINED_LENGTH) {
+            constantOffsets = new int[INITIAL_CONSTANTS];
+        }
+        if (methodOffsets.length > MAX_RETAINED_LENGTH) {
+            methodOffsets = new int[INITIAL_METHODS];
+        }
+        if (chars.length > MAX_RETAINED_LENGTH) {
+            chars = new char[INITIAL_CHARS];
+        }
+    }
+
+    private void ensureBuffer(int size) {
+        if (buffer.length < size) {
+            buffer = Arrays.copyOf(buffer, Math.max(size, buffer.length * 2));
+        }
+    }
+
+    /**
+     * Ищет сигнатуру метода в кэше по байтам имени и дескриптора, при промахе строит ее и
+     * запоминает.
+     *
+     * @param index порядковый номер метода в файле класса
+     */
+    private String signature(int index) {
+        int methodOffset = view.methodOffset(index);
+        int name = view.utf8Offset(u2(methodOffset + 2)) + 1;
+        int descriptor = view.utf8Offset(u2(methodOffset + 4)) + 1;
+        int nameLength = u2(name);
+        int descriptorLength = u2(descriptor);
+        checkBounds(name + 2 + nameLength);
+        checkBounds(descriptor + 2 + descriptorLength);
+        String signature = signatures.get(buffer, name + 2, nameLength, descriptor + 2,
+                descriptorLength);
+        if (signature == null) {
+            signature = buildSignature(name + 2, nameLength, descriptor + 2, descriptorLength);
+        }
+        return signature;
+    }
+
+    /**
+     * Строит сигнатуру метода в формате {@link ClassMethodTable#parseMethodDescriptor} прямо
+     * из байт имени и дескриптора и запоминает ее в кэше. Дескриптор декодируется в начало
+     * {@link #chars}, имя - сразу за ним.
+     */
+    private String buildSignature(int name, int nameLength, int descriptor,
+            int descriptorLength) {
+        if (chars.length < nameLength + descriptorLength) {
+            chars = new char[Math.max(nameLength + descriptorLength, chars.length * 2)];
+        }
+        int length = ClassMethodTable.decodeUTF(buffer, descriptor, descriptorLength, chars, 0);
+        int nameCount = ClassMethodTable.decodeUTF(buffer, name, nameLength, chars, length);
+        if (length == 0 || chars[0] != '(') {
+            throw illegalDescriptor(length);
+        }
+        int close = length - 1;
+        while (close > 0 && chars[close] != ')') {
+            close--;
+        }
+        if (close == 0) {
+            throw illegalDescriptor(length);
+        }
+
+        builder.setLength(0);
+        if (appendType(close + 1, length, true) != length) {
+            throw illegalDescriptor(length);
+        }
+        builder.append(' ');
+        builder.append(chars, length, nameCount);
+        builder.append('(');
+        int index = 1;
+        while (index < close) {
+            if (index > 1) {
+                builder.append(',');
+            }
+            index = appendType(index, close, false);
+        }
+        builder.append(')');
+        String signature = builder.toString();
+        signatures.put(new String(chars, length, nameCount), new String(chars, 0, length),
+                signature);
+        return signature;
+    }
+
+    /**
+     * добавляет имя типа, записанного в {@link #chars} начиная с index
+     *
+     * @return индекс, следующий за типом
+     */
+    private int appendType(int index, int end, boolean returnType) {
+        int dimensions = 0;
+        while (index < end && chars[index] == '[') {
+            dimensions++;
+            index++;
+        }
+        if (index >= end) {
+            throw new IllegalStateException("illegal state string");
+        }
+        char type = chars[index++];
+        switch (type) {
+            case 'B': {
+                builder.append("byte");
+                break;
+            }
+            case 'C': {
+                builder.append("char");
+                break;
+            }
+            case 'D': {
+                builder.append("double");
+                break;
+            }
+            case 'F': {
+                builder.append("float");
+                break;
+            }
+            case 'I': {
+                builder.append("int");
+                break;
+            }
+            case 'J': {
+                builder.append("long");
+                break;
+            }
+            case 'S': {
+                builder.append("short");
+                break;
+            }
+            case 'Z': {
+                builder.append("boolean");
+                break;
+            }
+            case 'V': {
+                if (!returnType) {
+                    throw new IllegalStateException("illegal param type");
+                }
+                builder.append("void");
+                break;
+            }
+            case 'L': {
+                int start = index;
+                while (index < end && chars[index] != ';') {
+                    index++;
+                }
+                if (index == end) {
+                    throw new IllegalStateException("wrong type format "
+                            + new String(chars, start - 1, end - start + 1));
+                }
+                for (int i = start; i < index; i++) {
+                    char c = chars[i];
+                    builder.append(c == '/' ? '.' : c);
+                }
+                index++;
+                break;
+            }
+            default: {
+                throw new IllegalStateException("illegal type " + type);
+            }
+        }
+        for (int i = 0; i < dimensions; i++) {
+            builder.append("[]");
+        }
+        return index;
+    }
+
+    private IllegalStateException illegalDescriptor(int length) {
+        return new IllegalStateException("illegal methodDescriptor " + new String(chars, 0, length));
+    }
+
+    private int u2(int position) {
+        checkBounds(position + 2);
+        return (buffer[position] & 0xFF) << 8 | buffer[position + 1] & 0xFF;
+    }
+
+    /**
+     * данные за пределами limit остались от предыдущего класса и читаться не должны
+     */
+    private void checkBounds(int end) {
+        if (end > limit || end < 0) {
+            throw new IllegalStateException("unexpected end of class data");
+        }
+    }
+}
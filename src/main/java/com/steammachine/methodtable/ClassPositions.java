@@ -0,0 +1,135 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Данные о расположении методов одного класса вместе со сведениями о самом классе: имя,
+ * суперкласс, интерфейсы, файл исходника, вложенные классы и члены гнезда (nest). Все
+ * сведения извлекаются за тот же проход по файлу класса, что и таблица методов. Элемент потока
+ * {@link ClassScanPublisher}, результат {@link ClassMethodTable#readClassPositions} и
+ * {@link ClassView#classPositions()}. <p>
+ * Имена классов - в формате {@link Class#getName()}.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class ClassPositions {
+
+    private final String className;
+    private final String source;
+    private final MethodPositionTable table;
+    private final String superClassName;
+    private final List<String> interfaceNames;
+    private final String sourceFile;
+    private final List<String> innerClassNames;
+    private final String nestHost;
+    private final List<String> nestMemberNames;
+
+    ClassPositions(String className, String source, MethodPositionTable table,
+            String superClassName, List<String> interfaceNames, String sourceFile,
+            List<String> innerClassNames, String nestHost, List<String> nestMemberNames) {
+        this.className = Objects.requireNonNull(className);
+        this.source = source;
+        this.table = Objects.requireNonNull(table);
+        this.superClassName = superClassName;
+        this.interfaceNames = Objects.requireNonNull(interfaceNames);
+        this.sourceFile = sourceFile;
+        this.innerClassNames = Objects.requireNonNull(innerClassNames);
+        this.nestHost = nestHost;
+        this.nestMemberNames = Objects.requireNonNull(nestMemberNames);
+    }
+
+    /**
+     * @return имя класса
+     */
+    public String className() {
+        return className;
+    }
+
+    /**
+     * @return путь к файлу класса или {@code jar!/элемент}, null - источник неизвестен
+     */
+    public String source() {
+        return source;
+    }
+
+    /**
+     * @return компактная таблица расположения методов
+     */
+    public MethodPositionTable table() {
+        return table;
+    }
+
+    /**
+     * @return данные о расположении методов по сигнатурам, только для чтения
+     */
+    public Map<String, SourceCodePosition> positions() {
+        return table.asMap();
+    }
+
+    /**
+     * @return имя суперкласса, null для {@code java.lang.Object} и {@code module-info}
+     */
+    public String superClassName() {
+        return superClassName;
+    }
+
+    /**
+     * @return имена непосредственно реализуемых интерфейсов в порядке объявления
+     */
+    public List<String> interfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * @return имя файла исходника из атрибута SourceFile (без каталогов) или null, если класс
+     * собран без этой информации
+     */
+    public String sourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * @return вложенные классы, объявленные в этом классе, в том числе локальные и анонимные,
+     * по атрибуту InnerClasses
+     */
+    public List<String> innerClassNames() {
+        return innerClassNames;
+    }
+
+    /**
+     * @return хозяин гнезда из атрибута NestHost (Java 11+) или null, если класс сам является
+     * хозяином или собран для более старой версии
+     */
+    public String nestHost() {
+        return nestHost;
+    }
+
+    /**
+     * @return члены гнезда из атрибута NestMembers (Java 11+)
+     */
+    public List<String> nestMemberNames() {
+        return nestMemberNames;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassPositions{" +
+                "className='" + className + '\'' +
+                ", source='" + source + '\'' +
+                ", sourceFile='" + sourceFile + '\'' +
+                ", superClassName='" + superClassName + '\'' +
+                ", methods=" + table.size() +
+                '}';
+    }
+
+    /**
+     * @return копия с другим именем класса, источником и таблицей методов
+     */
+    ClassPositions with(String className, String source, MethodPositionTable table) {
+        return new ClassPositions(className, source, table, superClassName, interfaceNames,
+                sourceFile, innerClassNames, nestHost, nestMemberNames);
+    }
+}
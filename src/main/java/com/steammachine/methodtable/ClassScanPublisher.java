@@ -0,0 +1,437 @@
+package com.steammachine.methodtable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Потоковый обход jar файлов, файлов jmod и каталогов с классами: данные о расположении методов
+ * вместе со сведениями о классе выдаются подписчику по мере разбора классов, а не одной картой
+ * в конце. Имя класса в {@link ClassPositions#className()} определяется по пути к файлу - так
+ * же, как его ищет загрузчик классов. <p>
+ * Интерфейсы {@link Subscriber} и {@link Subscription} повторяют
+ * {@code java.util.concurrent.Flow} (библиотека собирается для Java 8); адаптер к Flow -
+ * {@code FlowAdapters.toFlowPublisher} из отдельной сборки для Java 9+ (исходники в
+ * src/flow/java, задача {@code flowJar}). Правила те же: классы выдаются только в пределах
+ * запрошенного через {@link Subscription#request(long)} количества, вызовы подписчика
+ * последовательны, но могут приходить из разных потоков - потоков исполнителя или потока,
+ * вызвавшего {@code request}. <p>
+ * Одновременно разбирается не более {@code concurrency} классов и не более
+ * {@code 2 * concurrency} разобранных классов ожидают выдачи, поэтому объем памяти не зависит от
+ * размера classpath: элементы classpath открываются по очереди, каталоги обходятся лениво.
+ * Пока подписчик обрабатывает очередной класс, следующие уже разбираются. Для медленных
+ * сетевых файловых систем на Java 21 можно передать
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} и большой уровень параллелизма. <p>
+ * Порядок выдачи - порядок завершения разбора. Классы с одинаковым именем из разных элементов
+ * classpath выдаются все (их различает {@link ClassPositions#source()}). Ошибки отдельных
+ * классов и элементов classpath передаются обработчику ошибок и не прерывают обход; {@link Error}
+ * при разборе завершает подписку через {@link Subscriber#onError(Throwable)}. Каждая
+ * подписка обходит classpath заново. Если задан {@link StringPool}, сигнатуры выдаваемых
+ * таблиц берутся из пула.
+ *
+ * @author Vladimir Bogodukhov
+ * @see ClasspathIndexer
+ */
+public class ClassScanPublisher {
+
+    private final List<Path> classpath;
+    private final Executor executor;
+    private final int concurrency;
+    private final BiConsumer<String, Throwable> errorHandler;
+    private final StringPool pool;
+
+    /**
+     * обход на {@link ForkJoinPool#commonPool()} с параллелизмом по числу процессоров, ошибки
+     * отдельных классов пропускаются
+     *
+     * @param classpath jar файлы, файлы jmod и каталоги с классами
+     */
+    public ClassScanPublisher(List<Path> classpath) {
+        this(classpath, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(),
+                (source, error) -> {
+                });
+    }
+
+    /**
+     * @param classpath    jar файлы, файлы jmod и каталоги с классами
+     * @param executor     исполнитель задач разбора классов
+     * @param concurrency  наибольшее количество одновременно разбираемых классов
+     * @param errorHandler получает источник (путь к файлу или jar!/элемент) и ошибку для каждого
+     *                     класса или элемента classpath, который не удалось прочитать
+     */
+    public ClassScanPublisher(List<Path> classpath, Executor executor, int concurrency,
+            BiConsumer<String, Throwable> errorHandler) {
+        this(classpath, executor, concurrency, errorHandler, null);
+    }
+
+    /**
+     * @param classpath    jar файлы, файлы jmod и каталоги с классами
+     * @param executor     исполнитель задач разбора классов
+     * @param concurrency  наибольшее количество одновременно разбираемых классов
+     * @param errorHandler получает источник и ошибку для каждого класса или элемента classpath,
+     *                     который не удалось прочитать
+     * @param pool         пул строк для сигнатур, null - без устранения дубликатов
+     */
+    public ClassScanPublisher(List<Path> classpath, Executor executor, int concurrency,
+            BiConsumer<String, Throwable> errorHandler, StringPool pool) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency " + concurrency);
+        }
+        this.classpath = new ArrayList<>(classpath);
+        this.executor = Objects.requireNonNull(executor);
+        this.concurrency = concurrency;
+        this.errorHandler = Objects.requireNonNull(errorHandler);
+        this.pool = pool;
+    }
+
+    /**
+     * Подписаться на обход. Обход начинается после первого запроса подписчика.
+     *
+     * @param subscriber подписчик
+     */
+    public void subscribe(Subscriber<? super ClassPositions> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new ScanSubscription(subscriber));
+    }
+
+    /**
+     * Получатель элементов, аналог {@code java.util.concurrent.Flow.Subscriber}.
+     */
+    public interface Subscriber<T> {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Связь подписчика с источником, аналог {@code java.util.concurrent.Flow.Subscription}.
+     */
+    public interface Subscription {
+
+        /**
+         * @param n сколько еще элементов готов принять подписчик, больше нуля
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    /**
+     * @see ClasspathIndexer#readFile(Path)
+     */
+    private static ClassPositions readFile(Path file) throws IOException {
+        if (file.getFileSystem() == FileSystems.getDefault()) {
+            return ClassMethodTable.readClassPositions(file);
+        }
+        try (InputStream stream = Files.newInputStream(file)) {
+            return ClassMethodTableParser.forCurrentThread().parseClass(stream, -1);
+        }
+    }
+
+    private static ClassPositions readEntry(ZipFile archive, ZipEntry entry) throws IOException {
+        try (InputStream stream = archive.getInputStream(entry)) {
+            return ClassMethodTableParser.forCurrentThread().parseClass(stream, entry.getSize());
+        }
+    }
+
+    private interface ClassReader {
+
+        ClassPositions read() throws IOException;
+    }
+
+    private static final class ClassTask {
+
+        private final String source;
+        private final String className;
+        private final ClassReader reader;
+        private final Archive archive;
+
+        private ClassTask(String source, String className, ClassReader reader, Archive archive) {
+            this.source = source;
+            this.className = className;
+            this.reader = reader;
+            this.archive = archive;
+        }
+    }
+
+    /**
+     * Открытый архив закрывается, когда прочитаны все его элементы и завершены все задачи,
+     * которые из него читают.
+     */
+    private final class Archive {
+
+        private final ZipFile file;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Archive(ZipFile file) {
+            this.file = file;
+        }
+
+        private void retain() {
+            references.incrementAndGet();
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    errorHandler.accept(file.getName(), e);
+                }
+            }
+        }
+    }
+
+    private final class ScanSubscription implements Subscription {
+
+        private final Subscriber<? super ClassPositions> subscriber;
+        private final Queue<ClassPositions> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        /**
+         * задачи разбора, которые еще выполняются
+         */
+        private final AtomicInteger inFlight = new AtomicInteger();
+        /**
+         * запущенные, но еще не выданные подписчику классы: выполняющиеся задачи и очередь
+         * {@link #ready}
+         */
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        /* состояние обхода, изменяется только внутри drain */
+        private final Iterator<Path> elements = classpath.iterator();
+        private Path element;
+        private Iterator<ClassTask> tasks;
+        private Stream<?> walk;
+        private Archive archive;
+        private boolean exhausted;
+        private boolean done;
+
+        private ScanSubscription(Subscriber<? super ClassPositions> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("non-positive request " + n);
+            } else {
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Выдача готовых классов и запуск новых задач. Выполняется одним потоком за раз: вызовы
+         * из других потоков во время работы только отмечают, что нужен еще один проход.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (done) {
+                    return;
+                }
+                Throwable failure = error;
+                if (cancelled || failure != null) {
+                    terminate();
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    }
+                    return;
+                }
+
+                long demand = requested.get();
+                long emitted = 0;
+                ClassPositions item;
+                while (emitted < demand && !cancelled && (item = ready.poll()) != null) {
+                    outstanding.decrementAndGet();
+                    emitted++;
+                    try {
+                        subscriber.onNext(item);
+                    } catch (Throwable e) {
+                        cancelled = true;
+                        errorHandler.accept(item.source(), e);
+                    }
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                if (cancelled) {
+                    terminate();
+                    return;
+                }
+
+                while (!exhausted && inFlight.get() < concurrency
+                        && outstanding.get() < Math.min(requested.get(), 2L * concurrency)) {
+                    ClassTask task = nextTask();
+                    if (task == null) {
+                        exhausted = true;
+                    } else {
+                        launch(task);
+                    }
+                }
+                if (exhausted && outstanding.get() == 0) {
+                    done = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            done = true;
+            closeElement();
+            ready.clear();
+        }
+
+        private void launch(ClassTask task) {
+            inFlight.incrementAndGet();
+            outstanding.incrementAndGet();
+            if (task.archive != null) {
+                task.archive.retain();
+            }
+            try {
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                errorHandler.accept(task.source, e);
+                finish(task, null);
+            }
+        }
+
+        private void run(ClassTask task) {
+            ClassPositions result = null;
+            try {
+                if (!cancelled) {
+                    ClassPositions positions = task.reader.read();
+                    MethodPositionTable table = positions.table();
+                    result = positions.with(task.className, task.source,
+                            pool != null ? table.deduplicated(pool) : table);
+                }
+            } catch (IOException | RuntimeException e) {
+                errorHandler.accept(task.source, e);
+            } catch (Error e) {
+                /* ошибка виртуальной машины завершает подписку, а не пропускает класс */
+                if (error == null) {
+                    error = e;
+                }
+            }
+            finish(task, result);
+            drain();
+        }
+
+        /**
+         * архив освобождается до уменьшения счетчиков, чтобы к завершению обхода все архивы
+         * были закрыты
+         */
+        private void finish(ClassTask task, ClassPositions result) {
+            if (task.archive != null) {
+                task.archive.release();
+            }
+            if (result != null) {
+                ready.offer(result);
+            } else {
+                outstanding.decrementAndGet();
+            }
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * @return следующий класс classpath или null, если классов больше нет
+         */
+        private ClassTask nextTask() {
+            while (true) {
+                try {
+                    if (tasks != null && tasks.hasNext()) {
+                        return tasks.next();
+                    }
+                } catch (UncheckedIOException e) {
+                    errorHandler.accept(element.toString(), e.getCause());
+                }
+                closeElement();
+                if (!elements.hasNext()) {
+                    return null;
+                }
+                openElement(elements.next());
+            }
+        }
+
+        private void openElement(Path path) {
+            element = path;
+            try {
+                if (Files.isDirectory(path)) {
+                    Stream<Path> files = Files.walk(path);
+                    walk = files;
+                    tasks = files.filter(file -> ClasspathIndexer.isClassFile(file.toString()))
+                            .filter(Files::isRegularFile)
+                            .map(file -> new ClassTask(file.toString(),
+                                    ClasspathIndexer.className(path, file),
+                                    () -> readFile(file), null))
+                            .iterator();
+                } else {
+                    Archive opened = new Archive(new ZipFile(path.toFile()));
+                    archive = opened;
+                    tasks = opened.file.stream()
+                            .filter(entry -> ClasspathIndexer.classResourceName(opened.file, entry)
+                                    != null)
+                            .map(entry -> new ClassTask(
+                                    opened.file.getName() + "!/" + entry.getName(),
+                                    ClasspathIndexer.className(
+                                            ClasspathIndexer.classResourceName(opened.file, entry)),
+                                    () -> readEntry(opened.file, entry), opened))
+                            .iterator();
+                }
+            } catch (IOException | RuntimeException e) {
+                errorHandler.accept(path.toString(), e);
+            }
+        }
+
+        private void closeElement() {
+            if (walk != null) {
+                walk.close();
+                walk = null;
+            }
+            if (archive != null) {
+                archive.release();
+                archive = null;
+            }
+            tasks = null;
+        }
+    }
+}
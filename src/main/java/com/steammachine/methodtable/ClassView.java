@@ -0,0 +1,867 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.CCIC;
+import com.steammachine.methodtable.ClassMethodTable.DefaultSourceCodePosition;
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Ленивое представление файла класса поверх его байт. <p>
+ * При создании выполняется один проход по данным, который запоминает смещения элементов
+ * таблицы констант и структур method_info. Строки и данные о расположении методов
+ * декодируются только при обращении к ним. <p>
+ * Представление не копирует данные и держит ссылку на исходный буфер, поэтому буфер не должен
+ * изменяться, пока представление используется. Чтение идет только по абсолютным смещениям,
+ * так что экземпляр можно использовать из нескольких потоков.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class ClassView {
+
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    /**
+     * у метода нет атрибута Code или в нем нет таблицы номеров строк
+     */
+    private static final int NO_CODE = -2;
+
+    /**
+     * таблица номеров строк пуста
+     */
+    private static final int NO_LINE = -1;
+
+    private final ByteBuffer data;
+
+    /**
+     * смещения тегов элементов таблицы констант, индекс совпадает с индексом константы; массив
+     * может быть длиннее таблицы, если он используется повторно
+     */
+    private final int[] constantOffsets;
+
+    /**
+     * количество элементов таблицы констант (constant_pool_count)
+     */
+    private final int constantCount;
+
+    /**
+     * смещение поля access_flags класса, за ним следуют this_class, super_class и interfaces
+     */
+    private final int classOffset;
+
+    /**
+     * смещение поля methods_count
+     */
+    private final int methodsOffset;
+
+    /**
+     * количество методов (methods_count)
+     */
+    private final int methodCount;
+
+    /**
+     * смещения структур method_info, вычисляются при создании представления или, для
+     * представлений созданных через {@link #scan}, при первом обращении; массив может быть
+     * длиннее количества методов, если он используется повторно
+     */
+    private volatile int[] methodOffsets;
+
+    /**
+     * @param constantOffsets массив для смещений констант или null
+     * @param methodOffsets   массив для смещений методов или null, не используется, если методы
+     *                        не просматриваются заранее
+     */
+    private ClassView(ByteBuffer data, int[] constantOffsets, int[] methodOffsets,
+            boolean scanMethods) {
+        this.data = data;
+        if (data.getInt(0) != CCIC.CLASS_MAGIC_NUMBER) {
+            throw new IllegalStateException(" is not a Java .class file");
+        }
+
+        // u4 magic; u2 minor_version; u2 major_version;
+        int position = 8;
+        int constCount = unsignedShort(position);
+        position += 2;
+
+        if (constantOffsets == null || constantOffsets.length < constCount) {
+            constantOffsets = new int[constantOffsets == null ? constCount
+                    : Math.max(constCount, constantOffsets.length * 2)];
+        } else {
+            Arrays.fill(constantOffsets, 0, constCount, 0);
+        }
+        this.constantOffsets = constantOffsets;
+        this.constantCount = constCount;
+        for (int i = 1; i < constCount; i++) {
+            constantOffsets[i] = position;
+            byte tag = data.get(position);
+            switch (tag) {
+                case CCIC.Constant_Class:
+                case CCIC.Constant_String:
+                case CCIC.Constant_MethodType: {
+                    position += 3;
+                    break;
+                }
+
+                case CCIC.Constant_FieldRef:
+                case CCIC.Constant_MethodRef:
+                case CCIC.Constant_InterfaceMethodRef:
+                case CCIC.Constant_NameAndType:
+                case CCIC.Constant_Integer:
+                case CCIC.Constant_Float:
+                case CCIC.Constant_InvokeDynamic: {
+                    position += 5;
+                    break;
+                }
+
+                case CCIC.Constant_Long:
+                case CCIC.Constant_Double: {
+                    // 8-байтовые константы занимают два элемента в таблице констант
+                    i++;
+                    position += 9;
+                    break;
+                }
+
+                case CCIC.Constant_MethodHandle: {
+                    position += 4;
+                    break;
+                }
+
+                case CCIC.Constant_Utf8: {
+                    position += 3 + unsignedShort(position + 1);
+                    break;
+                }
+
+                default: {
+                    throw new IllegalStateException("Invalid byte tag in constant pool: " + tag);
+                }
+            }
+        }
+
+        this.classOffset = position;
+        position += 6; // access_flags, this_class, super_class
+        position += 2 + 2 * unsignedShort(position); // interfaces
+
+        int fieldCount = unsignedShort(position);
+        position += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            position = skipAttributes(position + 6); // access_flags, name_index, descriptor_index
+        }
+
+        this.methodsOffset = position;
+        this.methodCount = unsignedShort(position);
+        if (scanMethods) {
+            this.methodOffsets = scanMethods(methodOffsets);
+        }
+    }
+
+    /**
+     * Создать представление класса, начинающегося с текущей позиции буфера. Позиция и порядок
+     * байт буфера не изменяются.
+     *
+     * @param data буфер с данными класса
+     * @return представление класса
+     */
+    public static ClassView of(ByteBuffer data) {
+        Objects.requireNonNull(data);
+        return create(data.slice().order(ByteOrder.BIG_ENDIAN), null, null);
+    }
+
+    /**
+     * Создать представление, которое хранит смещения в переданных массивах, если их размера
+     * достаточно, - для разбора классов на повторно используемых буферах. Выросшие массивы
+     * доступны через {@link #constantOffsets()} и {@link #methodOffsets()}.
+     *
+     * @param data            буфер с данными класса с нулевой позиции и порядком big endian
+     * @param constantOffsets массив для смещений констант
+     * @param methodOffsets   массив для смещений методов
+     */
+    static ClassView of(ByteBuffer data, int[] constantOffsets, int[] methodOffsets) {
+        return create(data, constantOffsets, methodOffsets);
+    }
+
+    /**
+     * @param data данные класса
+     * @return представление класса
+     */
+    public static ClassView of(byte[] data) {
+        Objects.requireNonNull(data);
+        return create(ByteBuffer.wrap(data), null, null);
+    }
+
+    /**
+     * Создать представление, которое не просматривает методы заранее - для однократного
+     * последовательного обхода методов через {@link #visit}.
+     */
+    static ClassView scan(ByteBuffer data) {
+        Objects.requireNonNull(data);
+        return new ClassView(data.slice().order(ByteOrder.BIG_ENDIAN), null, null, false);
+    }
+
+    /**
+     * @return имя класса в формате {@link Class#getName()}
+     */
+    public String className() {
+        return classConstant(unsignedShort(classOffset + 2));
+    }
+
+    /**
+     * @return имя суперкласса, null для {@code java.lang.Object} и {@code module-info}
+     */
+    public String superClassName() {
+        int index = unsignedShort(classOffset + 4);
+        return index != 0 ? classConstant(index) : null;
+    }
+
+    /**
+     * @return имена непосредственно реализуемых интерфейсов
+     */
+    public List<String> interfaceNames() {
+        return classConstants(classOffset + 6);
+    }
+
+    /**
+     * @return имя файла исходника из атрибута SourceFile или null, если атрибута нет
+     */
+    public String sourceFile() {
+        int attribute = classAttribute(CCIC.ATTRIBUTE_SOURCE_FILE);
+        return attribute >= 0 ? utf8(unsignedShort(attribute + 6)) : null;
+    }
+
+    /**
+     * @return вложенные классы, объявленные в этом классе, в том числе локальные и анонимные
+     * @see ClassPositions#innerClassNames()
+     */
+    public List<String> innerClassNames() {
+        int attribute = classAttribute(CCIC.ATTRIBUTE_INNER_CLASSES);
+        if (attribute < 0) {
+            return Collections.emptyList();
+        }
+        int thisClass = unsignedShort(classOffset + 2);
+        String prefix = null;
+        int count = unsignedShort(attribute + 6);
+        List<String> result = new ArrayList<>();
+        // u2 inner_class_info_index; u2 outer_class_info_index; u2 inner_name_index; u2 flags;
+        for (int i = 0, position = attribute + 8; i < count; i++, position += 8) {
+            int inner = unsignedShort(position);
+            int outer = unsignedShort(position + 2);
+            if (outer == thisClass) {
+                result.add(classConstant(inner));
+            } else if (outer == 0 && inner != thisClass) {
+                /* у локальных и анонимных классов внешний класс не указан */
+                String name = classConstant(inner);
+                prefix = prefix != null ? prefix : className() + "$";
+                if (name.startsWith(prefix)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return хозяин гнезда из атрибута NestHost или null, если атрибута нет
+     */
+    public String nestHost() {
+        int attribute = classAttribute(CCIC.ATTRIBUTE_NEST_HOST);
+        return attribute >= 0 ? classConstant(unsignedShort(attribute + 6)) : null;
+    }
+
+    /**
+     * @return члены гнезда из атрибута NestMembers
+     */
+    public List<String> nestMemberNames() {
+        int attribute = classAttribute(CCIC.ATTRIBUTE_NEST_MEMBERS);
+        return attribute >= 0 ? classConstants(attribute + 6) : Collections.emptyList();
+    }
+
+    /**
+     * @return таблица методов вместе со сведениями о классе
+     */
+    public ClassPositions classPositions() {
+        return classPositions(null);
+    }
+
+    /**
+     * @param source источник класса для {@link ClassPositions#source()}
+     */
+    ClassPositions classPositions(String source) {
+        return classPositions(source, methodTable());
+    }
+
+    /**
+     * @param source источник класса для {@link ClassPositions#source()}
+     * @param table  таблица методов класса
+     */
+    ClassPositions classPositions(String source, MethodPositionTable table) {
+        return new ClassPositions(className(), source, table, superClassName(),
+                interfaceNames(), sourceFile(), innerClassNames(), nestHost(), nestMemberNames());
+    }
+
+    /**
+     * @return количество методов класса
+     */
+    public int methodCount() {
+        return methodCount;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return флаги доступа метода
+     */
+    public int methodAccessFlags(int index) {
+        return unsignedShort(methodOffset(index));
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return создан ли метод компилятором (ACC_SYNTHETIC)
+     */
+    public boolean isSyntheticMethod(int index) {
+        return (methodAccessFlags(index) & ACC_SYNTHETIC) != 0;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return является ли метод мостом (ACC_BRIDGE)
+     */
+    public boolean isBridgeMethod(int index) {
+        return (methodAccessFlags(index) & ACC_BRIDGE) != 0;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return max_stack метода или 0, если у метода нет кода
+     */
+    public int methodMaxStack(int index) {
+        int code = codeAttribute(methodOffset(index));
+        return code >= 0 ? unsignedShort(code) : 0;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return max_locals метода или 0, если у метода нет кода
+     */
+    public int methodMaxLocals(int index) {
+        int code = codeAttribute(methodOffset(index));
+        return code >= 0 ? unsignedShort(code + 2) : 0;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return размер байт-кода метода (code_length) или 0, если у метода нет кода
+     */
+    public int methodCodeLength(int index) {
+        int code = codeAttribute(methodOffset(index));
+        return code >= 0 ? data.getInt(code + 4) : 0;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return количество обработчиков исключений метода или 0, если у метода нет кода
+     */
+    public int methodExceptionTableLength(int index) {
+        int code = codeAttribute(methodOffset(index));
+        return code >= 0 ? unsignedShort(code + 8 + data.getInt(code + 4)) : 0;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return имя метода
+     */
+    public String methodName(int index) {
+        return utf8(unsignedShort(methodOffset(index) + 2));
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return дескриптор метода в формате JVM, например {@code (ILjava/lang/String;)V}
+     */
+    public String methodDescriptor(int index) {
+        return utf8(unsignedShort(methodOffset(index) + 4));
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return сигнатура метода в формате {@link ClassMethodTable#methodSignature}
+     * @see SignatureCache
+     */
+    public String methodSignature(int index) {
+        return SignatureCache.shared().signature(methodName(index), methodDescriptor(index));
+    }
+
+    /**
+     * Найти метод по имени и дескриптору. Строки класса сравниваются с аргументами без
+     * декодирования.
+     *
+     * @param name       имя метода
+     * @param descriptor дескриптор метода в формате JVM, например {@code (ILjava/lang/String;)V}
+     * @return порядковый номер метода в файле класса или -1, если метод не найден
+     */
+    public int indexOf(String name, String descriptor) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(descriptor);
+        int[] methodOffsets = methodOffsets();
+        for (int i = 0; i < methodCount; i++) {
+            int offset = methodOffsets[i];
+            if (utf8Equals(unsignedShort(offset + 2), name)
+                    && utf8Equals(unsignedShort(offset + 4), descriptor)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return данные о расположении метода
+     */
+    public SourceCodePosition position(int index) {
+        return positionAt(methodOffset(index), index);
+    }
+
+    /**
+     * Прочитать полную таблицу номеров строк метода. Если у метода несколько атрибутов
+     * LineNumberTable, их записи объединяются.
+     *
+     * @param index порядковый номер метода в файле класса
+     * @return таблица номеров строк, пустая если данных о строках нет
+     */
+    public LineTable lineTable(int index) {
+        int codeOffset = codeAttribute(methodOffset(index));
+        if (codeOffset < 0) {
+            return LineTable.EMPTY;
+        }
+        int position = attributesOfCode(codeOffset);
+        int attributesCount = unsignedShort(position);
+        position += 2;
+
+        int[] entries = new int[0];
+        int count = 0;
+        for (int j = 0; j < attributesCount; j++) {
+            if (utf8Matches(unsignedShort(position), CCIC.ATTRIBUTE_LINE_NUMBER_TABLE)) {
+                int length = unsignedShort(position + 6);
+                entries = Arrays.copyOf(entries, count + length);
+                for (int k = 0; k < length; k++) {
+                    // u2 start_pc; u2 line_number;
+                    entries[count++] = data.getInt(position + 8 + k * 4);
+                }
+            }
+            position += 6 + data.getInt(position + 2);
+        }
+        return LineTable.of(entries, count);
+    }
+
+    /**
+     * Диапазон строк метода без построения таблицы номеров строк.
+     *
+     * @param index порядковый номер метода в файле класса
+     * @return минимальный номер строки в старших 32 битах, максимальный - в младших, или -1,
+     * если данных о строках нет
+     */
+    long lineRange(int index) {
+        int codeOffset = codeAttribute(methodOffset(index));
+        if (codeOffset < 0) {
+            return -1;
+        }
+        int position = attributesOfCode(codeOffset);
+        int attributesCount = unsignedShort(position);
+        position += 2;
+
+        int min = Integer.MAX_VALUE;
+        int max = -1;
+        for (int j = 0; j < attributesCount; j++) {
+            if (utf8Matches(unsignedShort(position), CCIC.ATTRIBUTE_LINE_NUMBER_TABLE)) {
+                int length = unsignedShort(position + 6);
+                for (int k = 0; k < length; k++) {
+                    int lineNumber = unsignedShort(position + 10 + k * 4);
+                    min = lineNumber < min ? lineNumber : min;
+                    max = lineNumber > max ? lineNumber : max;
+                }
+            }
+            position += 6 + data.getInt(position + 2);
+        }
+        return max < 0 ? -1 : (long) min << 32 | max;
+    }
+
+    /**
+     * Передать методы класса посетителю в порядке их следования в файле класса.
+     *
+     * @param visitor посетитель
+     * @return true, если посетитель получил все методы, false - если он остановил обход
+     */
+    public boolean visit(MethodPositionVisitor visitor) {
+        Objects.requireNonNull(visitor);
+        int methodCount = unsignedShort(methodsOffset);
+        int position = methodsOffset + 2;
+        for (int i = 0; i < methodCount; i++) {
+            if (!visitor.visitMethod(utf8(unsignedShort(position + 2)),
+                    utf8(unsignedShort(position + 4)), unsignedShort(position),
+                    positionAt(position, i))) {
+                return false;
+            }
+            position = skipAttributes(position + 6);
+        }
+        return true;
+    }
+
+    /**
+     * @return данные о расположении всех методов класса
+     */
+    public Map<String, SourceCodePosition> positions() {
+        Map<String, SourceCodePosition> result = new HashMap<>();
+        int methodCount = methodCount();
+        for (int i = 0; i < methodCount; i++) {
+            result.put(methodSignature(i), position(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return компактная таблица расположения всех методов класса
+     */
+    public MethodPositionTable methodTable() {
+        return methodTable(false);
+    }
+
+    /**
+     * @param withLineTables сохранить в таблице полные таблицы номеров строк методов
+     * @return компактная таблица расположения всех методов класса
+     * @see MethodPositionTable#lineTable(int)
+     */
+    public MethodPositionTable methodTable(boolean withLineTables) {
+        return methodTable(withLineTables, this::methodSignature);
+    }
+
+    /**
+     * @param withLineTables сохранить в таблице полные таблицы номеров строк методов
+     * @param signatures     сигнатура метода по его порядковому номеру в файле класса
+     * @return компактная таблица расположения всех методов класса
+     */
+    MethodPositionTable methodTable(boolean withLineTables, IntFunction<String> signatures) {
+        String[] methodSignatures = new String[methodCount];
+        int[] lineNumbers = new int[methodCount];
+        int[] orders = new int[methodCount];
+        LineTable[] lineTables = withLineTables ? new LineTable[methodCount] : null;
+        long[] bytecode = new long[methodCount];
+        int[] codeLengths = new int[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            methodSignatures[i] = signatures.apply(i);
+            if (lineTables != null) {
+                lineTables[i] = lineTable(i);
+            }
+            int methodOffset = methodOffset(i);
+            int code = codeAttribute(methodOffset);
+            if (code >= 0) {
+                // u2 max_stack; u2 max_locals; u4 code_length; u1 code[code_length];
+                codeLengths[i] = data.getInt(code + 4);
+                bytecode[i] = MethodPositionTable.bytecode(unsignedShort(methodOffset),
+                        unsignedShort(code), unsignedShort(code + 2),
+                        unsignedShort(code + 8 + codeLengths[i]));
+                lineNumbers[i] = minLineNumberOfCode(code);
+            } else {
+                bytecode[i] = MethodPositionTable.bytecode(unsignedShort(methodOffset), 0, 0, 0);
+                lineNumbers[i] = NO_CODE;
+            }
+            orders[i] = lineNumbers[i] == NO_CODE ? -1 : i;
+        }
+        return MethodPositionTable.sorted(methodSignatures, lineNumbers, orders, lineTables,
+                bytecode, codeLengths);
+    }
+
+    /**
+     * @return размер файла класса в байтах (до конца буфера)
+     */
+    int length() {
+        return data.limit();
+    }
+
+    /**
+     * @return количество элементов таблицы констант (constant_pool_count)
+     */
+    int constantCount() {
+        return constantCount;
+    }
+
+    /**
+     * @return массив смещений констант, может быть длиннее таблицы констант
+     */
+    int[] constantOffsets() {
+        return constantOffsets;
+    }
+
+    /**
+     * @param index порядковый номер метода в файле класса
+     * @return смещение структуры method_info
+     */
+    int methodOffset(int index) {
+        int[] methodOffsets = methodOffsets();
+        if (index < 0 || index >= methodCount) {
+            throw new IndexOutOfBoundsException("illegal method index : " + index);
+        }
+        return methodOffsets[index];
+    }
+
+    /**
+     * @return массив смещений методов, может быть длиннее количества методов
+     */
+    int[] methodOffsets() {
+        int[] methodOffsets = this.methodOffsets;
+        if (methodOffsets == null) {
+            methodOffsets = scanMethods(null);
+            this.methodOffsets = methodOffsets;
+        }
+        return methodOffsets;
+    }
+
+    /**
+     * @return смещение тега строковой константы
+     */
+    int utf8Offset(int constantIndex) {
+        if (constantIndex <= 0 || constantIndex >= constantCount) {
+            throw new IllegalStateException("illegal constant index : " + constantIndex);
+        }
+        int offset = constantOffsets[constantIndex];
+        if (offset == 0 || data.get(offset) != CCIC.Constant_Utf8) {
+            throw new IllegalStateException("consts[" + constantIndex + "] is not Utf8");
+        }
+        return offset;
+    }
+
+    /**
+     * чтение за пределами данных класса означает, что данные класса неполные
+     *
+     * @return {@link IllegalStateException} для {@link IndexOutOfBoundsException}, иначе та же
+     * ошибка
+     */
+    static RuntimeException truncated(RuntimeException error) {
+        if (error instanceof IndexOutOfBoundsException) {
+            return new IllegalStateException("unexpected end of class data", error);
+        }
+        return error;
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    /**
+     * @return смещение атрибута класса с заданным именем или -1, если атрибута нет
+     */
+    private int classAttribute(byte[] name) {
+        int position = methodCount == 0 ? methodsOffset + 2
+                : skipAttributes(methodOffsets()[methodCount - 1] + 6);
+        int attributesCount = unsignedShort(position);
+        position += 2;
+        for (int j = 0; j < attributesCount; j++) {
+            if (utf8Matches(unsignedShort(position), name)) {
+                checkBounds(position + 6 + data.getInt(position + 2));
+                return position;
+            }
+            position += 6 + data.getInt(position + 2);
+        }
+        return -1;
+    }
+
+    /**
+     * @return имена классов из списка u2 count; u2 class_index[count]
+     */
+    private List<String> classConstants(int position) {
+        int count = unsignedShort(position);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = classConstant(unsignedShort(position + 2 + 2 * i));
+        }
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    private String classConstant(int constantIndex) {
+        if (constantIndex <= 0 || constantIndex >= constantCount) {
+            throw new IllegalStateException("illegal constant index : " + constantIndex);
+        }
+        int offset = constantOffsets[constantIndex];
+        if (offset == 0 || data.get(offset) != CCIC.Constant_Class) {
+            throw new IllegalStateException("consts[" + constantIndex + "] is not Class");
+        }
+        return utf8(unsignedShort(offset + 1)).replace('/', '.');
+    }
+
+    /**
+     * @param methodOffsets массив для смещений методов или null
+     */
+    private int[] scanMethods(int[] methodOffsets) {
+        int position = methodsOffset + 2;
+        if (methodOffsets == null || methodOffsets.length < methodCount) {
+            methodOffsets = new int[methodOffsets == null ? methodCount
+                    : Math.max(methodCount, methodOffsets.length * 2)];
+        }
+        for (int i = 0; i < methodCount; i++) {
+            methodOffsets[i] = position;
+            position = skipAttributes(position + 6);
+        }
+        checkBounds(position);
+        return methodOffsets;
+    }
+
+    /**
+     * @param methodOffset смещение структуры method_info
+     */
+    private SourceCodePosition positionAt(int methodOffset, int order) {
+        int codeOffset = codeAttribute(methodOffset);
+        int minLineNumber = codeOffset >= 0 ? minLineNumberOfCode(codeOffset) : NO_CODE;
+        if (minLineNumber == NO_CODE) {
+            return ClassMethodTable.NO_POSITION;
+        } else if (minLineNumber == NO_LINE) {
+            return new DefaultSourceCodePosition(-1, order, false);
+        }
+        return new DefaultSourceCodePosition(minLineNumber, order);
+    }
+
+    /**
+     * @param methodOffset смещение структуры method_info
+     * @return смещение данных атрибута Code (после attribute_length) или -1, если его нет
+     */
+    private int codeAttribute(int methodOffset) {
+        int position = methodOffset + 6;
+        int attributesCount = unsignedShort(position);
+        position += 2;
+        for (int j = 0; j < attributesCount; j++) {
+            if (utf8Matches(unsignedShort(position), CCIC.ATTRIBUTE_CODE)) {
+                return position + 6;
+            }
+            position += 6 + data.getInt(position + 2);
+        }
+        return -1;
+    }
+
+    /**
+     * @param position смещение данных атрибута Code
+     * @return смещение поля attributes_count атрибута Code
+     */
+    private int attributesOfCode(int position) {
+        // u2 max_stack; u2 max_locals; u4 code_length; u1 code[code_length];
+        position += 8 + data.getInt(position + 4);
+        return position + 2 + 8 * unsignedShort(position); // exception_table
+    }
+
+    /**
+     * @param position смещение данных атрибута Code
+     * @return минимальный номер строки метода, {@link #NO_LINE} или {@link #NO_CODE}
+     */
+    private int minLineNumberOfCode(int position) {
+        position = attributesOfCode(position);
+        int attributesCount = unsignedShort(position);
+        position += 2;
+        for (int j = 0; j < attributesCount; j++) {
+            if (utf8Matches(unsignedShort(position), CCIC.ATTRIBUTE_LINE_NUMBER_TABLE)) {
+                /* перебираем все элементы и получаем минимальное значение строки метода */
+                int length = unsignedShort(position + 6);
+                int minLineNumber = Integer.MAX_VALUE;
+                for (int k = 0; k < length; k++) {
+                    // u2 start_pc; u2 line_number;
+                    int lineNumber = unsignedShort(position + 10 + k * 4);
+                    minLineNumber = lineNumber < minLineNumber ? lineNumber : minLineNumber;
+                }
+                return length > 0 ? minLineNumber : NO_LINE;
+            }
+            position += 6 + data.getInt(position + 2);
+        }
+        return NO_CODE;
+    }
+
+    /**
+     * пропускает attributes_count и следующие за ним атрибуты
+     *
+     * @return смещение, следующее за последним атрибутом
+     */
+    private int skipAttributes(int position) {
+        int attributesCount = unsignedShort(position);
+        position += 2;
+        for (int j = 0; j < attributesCount; j++) {
+            // u2 attribute_name_index; u4 attribute_length;
+            int length = data.getInt(position + 2);
+            if (length < 0) {
+                throw new IllegalStateException("illegal attribute length : " + length);
+            }
+            position += 6 + length;
+        }
+        return position;
+    }
+
+    private String utf8(int constantIndex) {
+        int offset = utf8Offset(constantIndex);
+        return ClassMethodTable.decodeUTF(data, offset + 3, unsignedShort(offset + 1));
+    }
+
+    /**
+     * сравнивает строковую константу с образцом побайтно, не декодируя ее
+     */
+    private boolean utf8Matches(int constantIndex, byte[] pattern) {
+        int offset = utf8Offset(constantIndex);
+        if (unsignedShort(offset + 1) != pattern.length) {
+            return false;
+        }
+        offset += 3;
+        for (int i = 0; i < pattern.length; i++) {
+            if (data.get(offset + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * сравнивает строковую константу со строкой, строки в ASCII сравниваются без декодирования
+     */
+    private boolean utf8Equals(int constantIndex, String value) {
+        int offset = utf8Offset(constantIndex);
+        int length = unsignedShort(offset + 1);
+        offset += 3;
+        if (length == value.length()) {
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                byte b = data.get(offset + i);
+                char c = value.charAt(i);
+                if (b < 0 || c >= 0x80 || c == 0) {
+                    ascii = false;
+                } else if (b != c) {
+                    return false;
+                }
+            }
+            if (ascii) {
+                return true;
+            }
+        } else if (length < value.length()) {
+            /* в модифицированном UTF-8 каждый символ занимает не меньше одного байта */
+            return false;
+        }
+        return value.equals(ClassMethodTable.decodeUTF(data, offset, length));
+    }
+
+    private static ClassView create(ByteBuffer data, int[] constantOffsets, int[] methodOffsets) {
+        try {
+            return new ClassView(data, constantOffsets, methodOffsets, true);
+        } catch (IndexOutOfBoundsException e) {
+            throw truncated(e);
+        }
+    }
+
+    private int unsignedShort(int position) {
+        return data.getShort(position) & 0xFFFF;
+    }
+
+    private void checkBounds(int position) {
+        if (position > data.limit()) {
+            throw new IllegalStateException("unexpected end of class data");
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Строит данные о расположении методов для всех классов из набора jar файлов и каталогов с
+ * классами. <p>
+ * Каждый файл класса разбирается отдельной задачей на заданном {@link Executor} (по умолчанию
+ * {@link ForkJoinPool#commonPool()}). Ошибка чтения или разбора одного класса передается
+ * обработчику ошибок и не прерывает остальную обработку. Если класс встречается в нескольких
+ * элементах classpath, используется первый - так же, как при загрузке классов. Данные классов
+ * хранятся в компактном виде {@link MethodPositionTable} и доступны только для чтения. <p>
+ * Классы JDK индексируются из образа среды выполнения ({@link #indexRuntimeImage}) или из
+ * файлов jmod ({@link #indexJmods}) с фильтром по модулям. <p>
+ * Если задан {@link StringPool}, сигнатуры всех классов берутся из пула - одинаковые сигнатуры
+ * разных классов хранятся одним экземпляром.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public class ClasspathIndexer {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JMOD_SUFFIX = ".jmod";
+    private static final String JMOD_CLASSES = "classes/";
+
+    private final Executor executor;
+    private final BiConsumer<String, Throwable> errorHandler;
+    private final StringPool pool;
+
+    /**
+     * индексация на {@link ForkJoinPool#commonPool()}, ошибки отдельных классов пропускаются
+     */
+    public ClasspathIndexer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor исполнитель задач разбора классов
+     */
+    public ClasspathIndexer(Executor executor) {
+        this(executor, (source, error) -> {
+        });
+    }
+
+    /**
+     * @param executor     исполнитель задач разбора классов
+     * @param errorHandler получает источник (путь к файлу или jar!/элемент) и ошибку для каждого
+     *                     класса или элемента classpath, который не удалось прочитать
+     */
+    public ClasspathIndexer(Executor executor, BiConsumer<String, Throwable> errorHandler) {
+        this(executor, errorHandler, null);
+    }
+
+    /**
+     * @param executor     исполнитель задач разбора классов
+     * @param errorHandler получает источник и ошибку для каждого класса или элемента classpath,
+     *                     который не удалось прочитать
+     * @param pool         пул строк для сигнатур, null - без устранения дубликатов
+     */
+    public ClasspathIndexer(Executor executor, BiConsumer<String, Throwable> errorHandler,
+            StringPool pool) {
+        this.executor = Objects.requireNonNull(executor);
+        this.errorHandler = Objects.requireNonNull(errorHandler);
+        this.pool = pool;
+    }
+
+    /**
+     * Проиндексировать jar файлы, файлы jmod и каталоги с классами.
+     *
+     * @param classpath jar файлы, файлы jmod и каталоги с классами, в том числе каталоги других
+     *                  файловых систем (например модули {@code jrt:/})
+     * @return данные о расположении методов по именам классов (в формате {@link Class#getName()})
+     */
+    public Map<String, Map<String, SourceCodePosition>> index(List<Path> classpath) {
+        return indexAll(classpath, errorHandler);
+    }
+
+    /**
+     * Проиндексировать jar файлы, файлы jmod и каталоги с классами. Ошибки передаются и
+     * обработчику ошибок индексатора, и обработчику {@code errors} - по нему вызывающий код
+     * узнает, что результат неполный.
+     *
+     * @param classpath jar файлы, файлы jmod и каталоги с классами
+     * @param errors    получает источник и ошибку для каждого класса или элемента classpath,
+     *                  который не удалось прочитать при этом вызове
+     * @return данные о расположении методов по именам классов (в формате {@link Class#getName()})
+     */
+    public Map<String, Map<String, SourceCodePosition>> index(List<Path> classpath,
+            BiConsumer<String, Throwable> errors) {
+        return indexAll(classpath, errorHandler.andThen(Objects.requireNonNull(errors)));
+    }
+
+    /**
+     * Проиндексировать образ текущей среды выполнения ({@code jrt:/}). Модули разбираются так
+     * же, как каталоги с классами, - параллельно, по задаче на класс. На Java 8, где образа
+     * модулей нет, индексируется {@code lib/rt.jar}, а фильтр модулей не применяется.
+     *
+     * @param modules фильтр имен модулей, например {@code "java.base"::equals}
+     * @return данные о расположении методов по именам классов
+     */
+    public Map<String, Map<String, SourceCodePosition>> indexRuntimeImage(
+            Predicate<String> modules) {
+        Objects.requireNonNull(modules);
+        FileSystem image;
+        try {
+            image = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (ProviderNotFoundException e) {
+            return index(Collections.singletonList(
+                    Paths.get(System.getProperty("java.home"), "lib", "rt.jar")));
+        }
+        List<Path> moduleDirectories;
+        try (Stream<Path> stream = Files.list(image.getPath("/modules"))) {
+            moduleDirectories = stream
+                    .filter(module -> modules.test(module.getFileName().toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return index(moduleDirectories);
+    }
+
+    /**
+     * Проиндексировать файлы jmod из каталога, например {@code $JAVA_HOME/jmods}.
+     *
+     * @param jmodsDirectory каталог с файлами jmod
+     * @param modules        фильтр имен модулей (имя файла без {@value #JMOD_SUFFIX})
+     * @return данные о расположении методов по именам классов
+     */
+    public Map<String, Map<String, SourceCodePosition>> indexJmods(Path jmodsDirectory,
+            Predicate<String> modules) throws IOException {
+        Objects.requireNonNull(modules);
+        List<Path> jmods;
+        try (Stream<Path> stream = Files.list(jmodsDirectory)) {
+            jmods = stream.filter(path -> path.toString().endsWith(JMOD_SUFFIX))
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return modules.test(name.substring(0, name.length() - JMOD_SUFFIX.length()));
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        return index(jmods);
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private Map<String, Map<String, SourceCodePosition>> indexAll(List<Path> classpath,
+            BiConsumer<String, Throwable> errors) {
+        Objects.requireNonNull(classpath);
+
+        List<Map<String, Map<String, SourceCodePosition>>> parts = new ArrayList<>();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        List<ZipFile> archives = new ArrayList<>();
+        try {
+            for (Path element : classpath) {
+                Map<String, Map<String, SourceCodePosition>> part = new ConcurrentHashMap<>();
+                parts.add(part);
+                try {
+                    if (Files.isDirectory(element)) {
+                        submitDirectory(element, part, tasks, errors);
+                    } else {
+                        ZipFile archive = new ZipFile(element.toFile());
+                        archives.add(archive);
+                        submitArchive(archive, part, tasks, errors);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    errors.accept(element.toString(), e);
+                }
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()])).join();
+        } finally {
+            for (ZipFile archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    errors.accept(archive.getName(), e);
+                }
+            }
+        }
+
+        Map<String, Map<String, SourceCodePosition>> result = new HashMap<>();
+        for (Map<String, Map<String, SourceCodePosition>> part : parts) {
+            for (Map.Entry<String, Map<String, SourceCodePosition>> entry : part.entrySet()) {
+                result.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void submitDirectory(Path directory,
+            Map<String, Map<String, SourceCodePosition>> part,
+            List<CompletableFuture<Void>> tasks, BiConsumer<String, Throwable> errors)
+            throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(path -> isClassFile(path.toString()))
+                    .filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            tasks.add(submit(file.toString(), part, className(directory, file),
+                    () -> readFile(file), errors));
+        }
+    }
+
+    private void submitArchive(ZipFile archive,
+            Map<String, Map<String, SourceCodePosition>> part,
+            List<CompletableFuture<Void>> tasks, BiConsumer<String, Throwable> errors) {
+        Enumeration<? extends ZipEntry> entries = archive.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String resourceName = classResourceName(archive, entry);
+            if (resourceName != null) {
+                tasks.add(submit(archive.getName() + "!/" + entry.getName(), part,
+                        className(resourceName), () -> readEntry(archive, entry), errors));
+            }
+        }
+    }
+
+    private CompletableFuture<Void> submit(String source,
+            Map<String, Map<String, SourceCodePosition>> part, String className,
+            ClassParser parser, BiConsumer<String, Throwable> errors) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                MethodPositionTable table = parser.parse();
+                part.put(className, (pool != null ? table.deduplicated(pool) : table).asMap());
+            } catch (IOException | RuntimeException e) {
+                errors.accept(source, e);
+            }
+        }, executor);
+    }
+
+    /**
+     * файлы обычной файловой системы читаются через {@link ClassView} (большие - через
+     * отображение в память), остальные (например {@code jrt:/}) - потоком
+     */
+    static MethodPositionTable readFile(Path file) throws IOException {
+        if (file.getFileSystem() == FileSystems.getDefault()) {
+            return ClassMethodTable.parseView(ClassMethodTable.readClassBuffer(file),
+                    ClassView::methodTable, table -> table.asMap().values());
+        }
+        try (InputStream stream = Files.newInputStream(file)) {
+            return ClassMethodTableParser.forCurrentThread().parseTable(stream, -1);
+        }
+    }
+
+    static MethodPositionTable readEntry(ZipFile archive, ZipEntry entry)
+            throws IOException {
+        try (InputStream stream = archive.getInputStream(entry)) {
+            return ClassMethodTableParser.forCurrentThread().parseTable(stream, entry.getSize());
+        }
+    }
+
+    /**
+     * @return имя ресурса класса внутри архива или null, если элемент архива - не класс
+     */
+    static String classResourceName(ZipFile archive, ZipEntry entry) {
+        /* в jmod классы лежат в каталоге classes/, рядом - native библиотеки, конфигурация и т.п. */
+        String prefix = archive.getName().endsWith(JMOD_SUFFIX) ? JMOD_CLASSES : "";
+        String name = entry.getName();
+        if (entry.isDirectory() || !name.startsWith(prefix)) {
+            return null;
+        }
+        String resourceName = name.substring(prefix.length());
+        return isClassFile(resourceName) && !resourceName.startsWith("META-INF/")
+                ? resourceName : null;
+    }
+
+    static String className(Path directory, Path file) {
+        return className(directory.relativize(file).toString()
+                .replace(file.getFileSystem().getSeparator(), "/"));
+    }
+
+    static boolean isClassFile(String name) {
+        return name.endsWith(CLASS_SUFFIX) && !name.endsWith("module-info" + CLASS_SUFFIX);
+    }
+
+    static String className(String resourceName) {
+        return resourceName.substring(0, resourceName.length() - CLASS_SUFFIX.length())
+                .replace('/', '.');
+    }
+
+    private interface ClassParser {
+
+        MethodPositionTable parse() throws IOException;
+    }
+}
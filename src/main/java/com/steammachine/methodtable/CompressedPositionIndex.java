@@ -0,0 +1,560 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.DefaultSourceCodePosition;
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Неизменяемый сжатый индекс расположения методов всего classpath. <p>
+ * Ключ метода - имя класса и сигнатура в модифицированной кодировке UTF-8, разделенные нулевым
+ * байтом (в модифицированной UTF-8 нулевых байтов нет, поэтому порядок ключей совпадает с
+ * порядком пар (класс, сигнатура)). Отсортированные ключи хранятся в одном массиве byte[]
+ * блоками по {@value #BLOCK_SIZE} с фронтальным сжатием: каждый ключ записывается как длина
+ * общего префикса с предыдущим ключом, длина остатка и остаток; первый ключ блока записывается
+ * целиком. Разреженный каталог хранит только смещения блоков; номера строк и порядковые
+ * номера методов хранятся парами в одном массиве int. <p>
+ * Поиск - двоичный поиск блока по первым ключам и последовательный просмотр блока без
+ * восстановления ключей: O(log n). Искомый ключ кодируется в буфер потока, поэтому поиск не
+ * создает объектов. Имена классов, повторяющиеся в ключах всех методов класса, сжимаются в
+ * общий префикс, поэтому индекс миллионов методов занимает десятки мегабайт.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class CompressedPositionIndex {
+
+    static final int BLOCK_SIZE = 16;
+
+    private static final int NO_LINE = -1;
+    private static final byte SEPARATOR = 0;
+
+    /**
+     * буферы для ключей длиннее этого не сохраняются в потоке
+     */
+    private static final int MAX_RETAINED_KEY_LENGTH = 16 * 1024;
+
+    /**
+     * буфер ключа поиска - {@link #indexOf} не создает объектов
+     */
+    private static final ThreadLocal<byte[]> KEY_BUFFER =
+            ThreadLocal.withInitial(() -> new byte[256]);
+
+    /**
+     * блоки ключей
+     */
+    private final byte[] data;
+
+    /**
+     * смещения блоков в data
+     */
+    private final int[] blockOffsets;
+
+    /**
+     * пары (номер строки, порядковый номер) записей в порядке ключей
+     */
+    private final int[] positions;
+    private final int methodCount;
+    private final int classCount;
+
+    private CompressedPositionIndex(byte[] data, int[] blockOffsets, int[] positions,
+            int methodCount, int classCount) {
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.positions = positions;
+        this.methodCount = methodCount;
+        this.classCount = classCount;
+    }
+
+    /**
+     * @param classes данные о расположении методов по именам классов, например результат
+     *                {@link ClasspathIndexer#index}
+     * @return индекс с теми же данными
+     */
+    public static CompressedPositionIndex of(Map<String, Map<String, SourceCodePosition>> classes) {
+        Objects.requireNonNull(classes);
+        Builder builder = new Builder();
+        classes.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * @return количество методов в индексе
+     */
+    public int size() {
+        return methodCount;
+    }
+
+    /**
+     * @return количество классов в индексе
+     */
+    public int classCount() {
+        return classCount;
+    }
+
+    /**
+     * @return приблизительный объем памяти, занимаемый данными индекса, в байтах
+     */
+    public long sizeInBytes() {
+        return data.length + 4L * blockOffsets.length + 4L * positions.length;
+    }
+
+    /**
+     * @param className имя класса в формате {@link Class#getName()}
+     * @param signature сигнатура метода в формате {@link ClassMethodTable#methodSignature}
+     * @return индекс записи метода или отрицательное число, если метод не найден
+     */
+    public int indexOf(String className, String signature) {
+        Objects.requireNonNull(className);
+        Objects.requireNonNull(signature);
+        if (signature.isEmpty()) {
+            return -1;
+        }
+        /* в модифицированной UTF-8 символ занимает не больше 3 байт */
+        int maxLength = 3 * (className.length() + signature.length()) + 1;
+        byte[] key = KEY_BUFFER.get();
+        if (key.length < maxLength) {
+            key = new byte[maxLength];
+            if (maxLength <= MAX_RETAINED_KEY_LENGTH) {
+                KEY_BUFFER.set(key);
+            }
+        }
+        int length = encodeKey(className, signature, key);
+        int block = findBlock(key, length);
+        return block < 0 ? -1 : scanBlock(block, key, length);
+    }
+
+    /**
+     * @param index индекс записи, полученный из {@link #indexOf}
+     * @return есть ли данные о расположении метода
+     */
+    public boolean hasPosition(int index) {
+        return positions[2 * index] != NO_LINE;
+    }
+
+    /**
+     * @param index индекс записи, полученный из {@link #indexOf}
+     * @return минимальный номер строки метода
+     */
+    public int minLineNumber(int index) {
+        return positions[2 * index];
+    }
+
+    /**
+     * @param index индекс записи, полученный из {@link #indexOf}
+     * @return порядковый номер метода в файле класса
+     */
+    public int order(int index) {
+        return positions[2 * index + 1];
+    }
+
+    /**
+     * @param className имя класса в формате {@link Class#getName()}
+     * @param signature сигнатура метода в формате {@link ClassMethodTable#methodSignature}
+     * @return данные о расположении метода или null, если метод не найден
+     */
+    public SourceCodePosition position(String className, String signature) {
+        int index = indexOf(className, signature);
+        return index < 0 ? null : position(index);
+    }
+
+    /**
+     * @param className имя класса в формате {@link Class#getName()}
+     * @return есть ли класс в индексе
+     */
+    public boolean contains(String className) {
+        Objects.requireNonNull(className);
+        byte[] prefix = key(className, "");
+        Cursor cursor = seek(prefix);
+        return cursor != null && cursor.startsWith(prefix);
+    }
+
+    /**
+     * Данные о расположении методов класса. Ключи восстанавливаются из блоков, поэтому метод
+     * предназначен для редких запросов, а не для поиска отдельных методов.
+     *
+     * @param className имя класса в формате {@link Class#getName()}
+     * @return данные о расположении методов класса или null, если класс не найден
+     */
+    public Map<String, SourceCodePosition> positions(String className) {
+        Objects.requireNonNull(className);
+        byte[] prefix = key(className, "");
+        Cursor cursor = seek(prefix);
+        if (cursor == null || !cursor.startsWith(prefix)) {
+            return null;
+        }
+        Map<String, SourceCodePosition> result = new HashMap<>();
+        do {
+            if (cursor.length > prefix.length) {
+                result.put(ClassMethodTable.decodeUTF(cursor.key, prefix.length,
+                        cursor.length - prefix.length), position(cursor.index));
+            }
+        } while (cursor.next() && cursor.startsWith(prefix));
+        return result;
+    }
+
+    /**
+     * Построитель индекса. Классы можно добавлять по мере разбора, например из
+     * {@link ClassScanPublisher}; данные каждого класса сразу переводятся в
+     * {@link MethodPositionTable}. Если класс добавлен несколько раз, используется первое
+     * добавление, как при загрузке классов с classpath.
+     */
+    public static final class Builder {
+
+        private final Map<String, MethodPositionTable> classes = new LinkedHashMap<>();
+
+        /**
+         * @param className имя класса в формате {@link Class#getName()}
+         * @param positions данные о расположении методов класса
+         * @return этот построитель
+         */
+        public Builder add(String className, Map<String, SourceCodePosition> positions) {
+            Objects.requireNonNull(className);
+            Objects.requireNonNull(positions);
+            if (!classes.containsKey(className)) {
+                classes.put(className, MethodPositionTable.of(positions));
+            }
+            return this;
+        }
+
+        /**
+         * @param positions данные класса
+         * @return этот построитель
+         */
+        public Builder add(ClassPositions positions) {
+            Objects.requireNonNull(positions);
+            return add(positions.className(), positions.positions());
+        }
+
+        /**
+         * @return индекс добавленных классов
+         */
+        public CompressedPositionIndex build() {
+            List<byte[]> classNames = new ArrayList<>(classes.size());
+            List<MethodPositionTable> tables = new ArrayList<>(classes.size());
+            int entryCount = 0;
+            for (Map.Entry<String, MethodPositionTable> entry : classes.entrySet()) {
+                classNames.add(key(entry.getKey(), ""));
+                tables.add(entry.getValue());
+                entryCount += Math.max(1, entry.getValue().size());
+            }
+            Integer[] classOrder = sortedOrder(classNames);
+
+            BlockWriter writer = new BlockWriter(entryCount);
+            int methodCount = 0;
+            for (int classIndex : classOrder) {
+                byte[] prefix = classNames.get(classIndex);
+                MethodPositionTable table = tables.get(classIndex);
+                if (table.size() == 0) {
+                    /* класс без методов представлен ключом с пустой сигнатурой */
+                    writer.add(prefix, NO_LINE, NO_LINE);
+                    continue;
+                }
+                List<byte[]> signatures = new ArrayList<>(table.size());
+                for (int i = 0; i < table.size(); i++) {
+                    signatures.add(PersistentPositionIndex.encode(table.signature(i)));
+                }
+                for (int i : sortedOrder(signatures)) {
+                    byte[] signature = signatures.get(i);
+                    byte[] key = Arrays.copyOf(prefix, prefix.length + signature.length);
+                    System.arraycopy(signature, 0, key, prefix.length, signature.length);
+                    writer.add(key, table.hasPosition(i) ? table.minLineNumber(i) : NO_LINE,
+                            table.order(i));
+                    methodCount++;
+                }
+            }
+            return writer.build(methodCount, classOrder.length);
+        }
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private SourceCodePosition position(int index) {
+        return new DefaultSourceCodePosition(minLineNumber(index), order(index),
+                hasPosition(index));
+    }
+
+    /**
+     * @return имя класса и сигнатура в модифицированной UTF-8 через нулевой байт
+     */
+    private static byte[] key(String className, String signature) {
+        byte[] key = new byte[3 * (className.length() + signature.length()) + 1];
+        return Arrays.copyOf(key, encodeKey(className, signature, key));
+    }
+
+    /**
+     * Записывает ключ в target, как {@link java.io.DataOutput#writeUTF} без длины.
+     *
+     * @param target массив не короче 3 * (длина имени + длина сигнатуры) + 1
+     * @return длина ключа
+     */
+    private static int encodeKey(String className, String signature, byte[] target) {
+        int offset = encode(className, target, 0);
+        target[offset++] = SEPARATOR;
+        return encode(signature, target, offset);
+    }
+
+    private static int encode(String value, byte[] target, int offset) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                target[offset++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                /* нулевой символ тоже записывается двумя байтами */
+                target[offset++] = (byte) (0xC0 | (c >> 6));
+                target[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                target[offset++] = (byte) (0xE0 | (c >> 12));
+                target[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                target[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return offset;
+    }
+
+    private static Integer[] sortedOrder(List<byte[]> keys) {
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (left, right) ->
+                PersistentPositionIndex.compareBytes(keys.get(left), keys.get(right)));
+        return order;
+    }
+
+    /**
+     * @return последний блок, первый ключ которого не больше key, или -1
+     */
+    private int findBlock(byte[] key, int keyLength) {
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compareFirstKey(middle, key, keyLength) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private int compareFirstKey(int block, byte[] key, int keyLength) {
+        int offset = blockOffsets[block];
+        /* длина общего префикса первого ключа блока всегда 0 */
+        offset++;
+        int length = varint(data, offset);
+        offset += varintLength(length);
+        int common = Math.min(length, keyLength);
+        for (int i = 0; i < common; i++) {
+            int compare = (data[offset + i] & 0xFF) - (key[i] & 0xFF);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - keyLength;
+    }
+
+    /**
+     * Поиск ключа в блоке без восстановления ключей. matched - длина общего префикса искомого
+     * ключа с предыдущим ключом блока, который меньше искомого. Если текущий ключ совпадает с
+     * предыдущим длиннее, чем matched, он тоже меньше искомого; если короче - он больше
+     * искомого, и ключа в индексе нет; иначе сравнивается остаток.
+     */
+    private int scanBlock(int block, byte[] key, int keyLength) {
+        int first = block * BLOCK_SIZE;
+        int end = Math.min(first + BLOCK_SIZE, positions.length / 2);
+        int offset = blockOffsets[block];
+        int matched = 0;
+        for (int index = first; index < end; index++) {
+            int shared = varint(data, offset);
+            offset += varintLength(shared);
+            int length = varint(data, offset);
+            offset += varintLength(length);
+
+            if (shared > matched) {
+                offset += length;
+                continue;
+            }
+            if (shared < matched) {
+                return -1;
+            }
+            int i = 0;
+            while (i < length && matched + i < keyLength
+                    && data[offset + i] == key[matched + i]) {
+                i++;
+            }
+            if (i == length) {
+                if (matched + i == keyLength) {
+                    return index;
+                }
+            } else if (matched + i == keyLength
+                    || (data[offset + i] & 0xFF) > (key[matched + i] & 0xFF)) {
+                return -1;
+            }
+            matched += i;
+            offset += length;
+        }
+        return -1;
+    }
+
+    /**
+     * @return курсор на первом ключе не меньше key или null, если такого ключа нет
+     */
+    private Cursor seek(byte[] key) {
+        if (blockOffsets.length == 0) {
+            return null;
+        }
+        Cursor cursor = new Cursor(Math.max(0, findBlock(key, key.length)));
+        do {
+            if (cursor.compareTo(key) >= 0) {
+                return cursor;
+            }
+        } while (cursor.next());
+        return null;
+    }
+
+    private static int varint(byte[] data, int offset) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[offset++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Последовательное чтение ключей с восстановлением
+     */
+    private final class Cursor {
+
+        private int index;
+        private int offset;
+        private byte[] key = new byte[64];
+        private int length;
+
+        private Cursor(int block) {
+            this.index = block * BLOCK_SIZE - 1;
+            this.offset = blockOffsets[block];
+            next();
+        }
+
+        private boolean next() {
+            if (index + 1 >= positions.length / 2) {
+                return false;
+            }
+            index++;
+            int shared = varint(data, offset);
+            offset += varintLength(shared);
+            int suffix = varint(data, offset);
+            offset += varintLength(suffix);
+            if (key.length < shared + suffix) {
+                key = Arrays.copyOf(key, Math.max(key.length * 2, shared + suffix));
+            }
+            System.arraycopy(data, offset, key, shared, suffix);
+            offset += suffix;
+            length = shared + suffix;
+            return true;
+        }
+
+        private boolean startsWith(byte[] prefix) {
+            if (length < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (key[i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int compareTo(byte[] other) {
+            int common = Math.min(length, other.length);
+            for (int i = 0; i < common; i++) {
+                int compare = (key[i] & 0xFF) - (other[i] & 0xFF);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return length - other.length;
+        }
+    }
+
+    /**
+     * Запись отсортированных ключей в блоки
+     */
+    private static final class BlockWriter {
+
+        private byte[] data = new byte[1024];
+        private int size;
+        private final int[] blockOffsets;
+        private final int[] positions;
+        private int count;
+        private byte[] previous = new byte[0];
+
+        private BlockWriter(int entryCount) {
+            this.blockOffsets = new int[(entryCount + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            this.positions = new int[entryCount * 2];
+        }
+
+        private void add(byte[] key, int lineNumber, int order) {
+            int shared = 0;
+            if (count % BLOCK_SIZE == 0) {
+                blockOffsets[count / BLOCK_SIZE] = size;
+            } else {
+                int common = Math.min(previous.length, key.length);
+                while (shared < common && previous[shared] == key[shared]) {
+                    shared++;
+                }
+            }
+            writeVarint(shared);
+            writeVarint(key.length - shared);
+            ensureCapacity(key.length - shared);
+            System.arraycopy(key, shared, data, size, key.length - shared);
+            size += key.length - shared;
+            positions[2 * count] = lineNumber;
+            positions[2 * count + 1] = order;
+            count++;
+            previous = key;
+        }
+
+        private void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+
+        private CompressedPositionIndex build(int methodCount, int classCount) {
+            return new CompressedPositionIndex(Arrays.copyOf(data, size), blockOffsets,
+                    positions, methodCount, classCount);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Порядок объявления методов с учетом иерархии классов: сначала методы суперклассов (от
+ * корня иерархии), затем методы подкласса, в пределах каждого класса - в порядке объявления в
+ * исходнике, как в {@link MethodOrder}. <p>
+ * Работает по файлам классов, без загрузки классов: суперкласс берется из поля super_class.
+ * Каждый класс разбирается один раз - результаты запоминаются в общей таблице
+ * {@link CompletableFuture} по имени класса, поэтому общие базовые классы многих подклассов
+ * не разбираются повторно, а параллельные запросы одного класса ждут один и тот же разбор.
+ * Разбор выполняется на заданном {@link Executor}. Ошибка чтения класса возвращается всем
+ * ожидающим его подклассам, но не запоминается: следующий запрос читает класс заново.
+ * Циклическое наследование в поврежденных файлах классов приводит к
+ * {@link IllegalStateException}. <p>
+ * Конструкторы, статические инициализаторы, синтетические методы и мосты не включаются.
+ * Переопределенный метод (в том числе с более узким типом результата) остается на месте метода
+ * суперкласса, но относится к подклассу.
+ * Методы {@code java.lang.Object} не включаются; если файл класса не найден, иерархия выше
+ * него не учитывается.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class HierarchyOrder {
+
+    private static final String OBJECT = "java.lang.Object";
+    private static final String CONSTRUCTOR = "<init>";
+    private static final String STATIC_INITIALIZER = "<clinit>";
+
+    private final ClassSource source;
+    private final Executor executor;
+    private final Map<String, CompletableFuture<List<OrderedMethod>>> resolved =
+            new ConcurrentHashMap<>();
+
+    /**
+     * суперклассы, разбора которых ждут классы; доступ под блокировкой самой таблицы
+     */
+    private final Map<String, String> waiting = new HashMap<>();
+
+    /**
+     * @param source источник файлов классов
+     * @param executor исполнитель задач разбора классов
+     */
+    public HierarchyOrder(ClassSource source, Executor executor) {
+        this.source = Objects.requireNonNull(source);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Порядок по файлам классов из ресурсов загрузчика, разбор на
+     * {@link ForkJoinPool#commonPool()}.
+     *
+     * @param loader загрузчик классов
+     * @return порядок методов
+     */
+    public static HierarchyOrder of(ClassLoader loader) {
+        Objects.requireNonNull(loader);
+        return new HierarchyOrder(className -> loader.getResourceAsStream(
+                className.replace('.', '/') + ".class"), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param className имя класса в формате {@link Class#getName()}
+     * @return методы класса и его суперклассов в порядке объявления, суперклассы первыми
+     * @throws UncheckedIOException  если файл класса не удалось прочитать
+     * @throws IllegalStateException если файл класса поврежден
+     */
+    public List<OrderedMethod> methods(String className) {
+        Objects.requireNonNull(className);
+        try {
+            return resolve(className).join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * @param className имя класса в формате {@link Class#getName()}
+     * @return методы класса и его суперклассов в порядке объявления, когда они будут вычислены
+     */
+    public CompletableFuture<List<OrderedMethod>> methodsAsync(String className) {
+        Objects.requireNonNull(className);
+        return resolve(className);
+    }
+
+    /**
+     * Упорядочить методы многих классов. Классы разбираются параллельно, общие суперклассы -
+     * один раз.
+     *
+     * @param classNames имена классов
+     * @return методы каждого класса в порядке следования классов в аргументе
+     */
+    public Map<String, List<OrderedMethod>> methods(Collection<String> classNames) {
+        Objects.requireNonNull(classNames);
+        Map<String, CompletableFuture<List<OrderedMethod>>> futures = new LinkedHashMap<>();
+        for (String className : classNames) {
+            futures.put(className, resolve(Objects.requireNonNull(className)));
+        }
+        Map<String, List<OrderedMethod>> result = new LinkedHashMap<>();
+        try {
+            futures.forEach((className, future) -> result.put(className, future.join()));
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+        return result;
+    }
+
+    /**
+     * @return количество классов, разобранных или разбираемых этим экземпляром
+     */
+    public int resolvedClasses() {
+        return resolved.size();
+    }
+
+    /**
+     * Источник файлов классов.
+     */
+    public interface ClassSource {
+
+        /**
+         * @param className имя класса в формате {@link Class#getName()}
+         * @return поток с данными класса (закрывается после чтения) или null, если класс не
+         * найден
+         */
+        InputStream open(String className) throws IOException;
+    }
+
+    /**
+     * Метод в упорядоченном списке.
+     */
+    public static final class OrderedMethod {
+
+        private final String className;
+        private final String signature;
+        private final SourceCodePosition position;
+        private final int accessFlags;
+
+        /**
+         * имя и дескриптор параметров, например {@code get(I)} - по ним находятся
+         * переопределения, в том числе с ковариантным типом результата
+         */
+        private final String overrideKey;
+
+        OrderedMethod(String className, String signature, SourceCodePosition position,
+                int accessFlags, String overrideKey) {
+            this.className = className;
+            this.signature = signature;
+            this.position = position;
+            this.accessFlags = accessFlags;
+            this.overrideKey = overrideKey;
+        }
+
+        /**
+         * @return имя класса, в котором объявлен метод
+         */
+        public String className() {
+            return className;
+        }
+
+        /**
+         * @return сигнатура метода в формате {@link ClassMethodTable#parseMethodDescriptor}
+         */
+        public String signature() {
+            return signature;
+        }
+
+        /**
+         * @return расположение метода в исходнике своего класса
+         */
+        public SourceCodePosition position() {
+            return position;
+        }
+
+        /**
+         * @return флаги доступа метода
+         */
+        public int accessFlags() {
+            return accessFlags;
+        }
+
+        @Override
+        public String toString() {
+            return className + "." + signature;
+        }
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    /**
+     * Класс с уже запущенным или завершенным разбором возвращается из таблицы; иначе разбор
+     * запускается на исполнителе, и результат дополняется методами суперкласса, когда тот
+     * будет разобран.
+     */
+    private CompletableFuture<List<OrderedMethod>> resolve(String className) {
+        CompletableFuture<List<OrderedMethod>> future = resolved.get(className);
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<List<OrderedMethod>> created = new CompletableFuture<>();
+        future = resolved.putIfAbsent(className, created);
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture.supplyAsync(() -> read(className), executor)
+                .thenCompose(view -> {
+                    if (view == null) {
+                        return CompletableFuture.completedFuture(
+                                Collections.<OrderedMethod>emptyList());
+                    }
+                    List<OrderedMethod> own = declaredMethods(className, view);
+                    String superClassName = view.superClassName();
+                    if (superClassName == null || superClassName.equals(OBJECT)) {
+                        return CompletableFuture.completedFuture(own);
+                    }
+                    awaitSuperclass(className, superClassName);
+                    return resolve(superClassName).thenApply(inherited -> merge(inherited, own));
+                })
+                .whenComplete((methods, error) -> {
+                    synchronized (waiting) {
+                        waiting.remove(className);
+                    }
+                    if (error != null) {
+                        /* ошибка не запоминается - следующий запрос прочитает класс заново */
+                        resolved.remove(className, created);
+                        created.completeExceptionally(error);
+                    } else {
+                        created.complete(methods);
+                    }
+                });
+        return created;
+    }
+
+    /**
+     * Запоминает, что класс ждет разбора суперкласса. Цепочка ожиданий не может замкнуться:
+     * замкнутая цепочка (например super_class, указывающий на сам класс, в поврежденном файле)
+     * ждала бы вечно.
+     *
+     * @throws IllegalStateException если суперкласс сам ждет этого класса
+     */
+    private void awaitSuperclass(String className, String superClassName) {
+        synchronized (waiting) {
+            for (String name = superClassName; name != null; name = waiting.get(name)) {
+                if (name.equals(className)) {
+                    throw new IllegalStateException("cyclic inheritance involving " + className);
+                }
+            }
+            waiting.put(className, superClassName);
+        }
+    }
+
+    private ClassView read(String className) {
+        try (InputStream stream = source.open(className)) {
+            if (stream == null) {
+                return null;
+            }
+            return ClassView.of(ClassMethodTable.readFully(stream, -1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(className, e);
+        }
+    }
+
+    /**
+     * методы класса в порядке объявления - по ключам {@link MethodOrder#declarationKeys}
+     */
+    private static List<OrderedMethod> declaredMethods(String className, ClassView view) {
+        int methodCount = view.methodCount();
+        SourceCodePosition[] positions = new SourceCodePosition[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            positions[i] = view.position(i);
+        }
+        long[] keys = MethodOrder.declarationKeys(methodCount, i -> positions[i]);
+
+        int count = 0;
+        for (int i = 0; i < methodCount; i++) {
+            String name = view.methodName(i);
+            if (!name.equals(CONSTRUCTOR) && !name.equals(STATIC_INITIALIZER)
+                    && !view.isSyntheticMethod(i) && !view.isBridgeMethod(i)) {
+                keys[count++] = keys[i];
+            }
+        }
+        /* в младших 32 битах ключа - номер метода в файле класса */
+        Arrays.sort(keys, 0, count);
+        OrderedMethod[] result = new OrderedMethod[count];
+        for (int i = 0; i < count; i++) {
+            int index = (int) keys[i];
+            String descriptor = view.methodDescriptor(index);
+            result[i] = new OrderedMethod(className, view.methodSignature(index),
+                    positions[index], view.methodAccessFlags(index), view.methodName(index)
+                    + descriptor.substring(0, descriptor.lastIndexOf(')') + 1));
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    /**
+     * методы суперклассов, затем собственные; переопределение занимает место метода суперкласса.
+     * Переопределение определяется по имени и параметрам: тип результата может быть уже
+     */
+    private static List<OrderedMethod> merge(List<OrderedMethod> inherited,
+            List<OrderedMethod> own) {
+        if (inherited.isEmpty()) {
+            return own;
+        }
+        Map<String, OrderedMethod> overrides = new LinkedHashMap<>();
+        for (OrderedMethod method : own) {
+            if (overridable(method)) {
+                overrides.put(method.overrideKey, method);
+            }
+        }
+        List<OrderedMethod> result = new ArrayList<>(inherited.size() + own.size());
+        for (OrderedMethod method : inherited) {
+            OrderedMethod override = overridable(method) ? overrides.remove(method.overrideKey)
+                    : null;
+            result.add(override != null ? override : method);
+        }
+        for (OrderedMethod method : own) {
+            if (!overridable(method) || overrides.containsKey(method.overrideKey)) {
+                result.add(method);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static boolean overridable(OrderedMethod method) {
+        return (method.accessFlags() & (Modifier.PRIVATE | Modifier.STATIC)) == 0;
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof RuntimeException ? (RuntimeException) cause : e;
+    }
+}
@@ -0,0 +1,231 @@
+package com.steammachine.methodtable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Обратный индекс класса: номер строки исходника - метод, которому она принадлежит. <p>
+ * Каждый метод представлен интервалом строк [минимальная строка, максимальная строка].
+ * Интервалы упорядочены по началу, над концами интервалов построено дерево отрезков с
+ * максимумом, поэтому поиск метода по строке занимает O(log n), а поиск всех методов,
+ * пересекающих диапазон строк, - O(log n + k). Если строку содержат несколько интервалов
+ * (например метод и лямбда внутри него), возвращается самый внутренний - с наибольшим началом.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class LineMethodIndex {
+
+    private final String[] signatures;
+    private final int[] startLines;
+    private final int[] endLines;
+
+    /**
+     * дерево отрезков: в узле - максимальный конец интервала в поддереве, листья начинаются с
+     * индекса leaves
+     */
+    private final int[] maxEnds;
+    private final int leaves;
+
+    /**
+     * @param signatures сигнатуры методов
+     * @param startLines минимальные номера строк методов
+     * @param endLines   максимальные номера строк методов
+     */
+    LineMethodIndex(String[] signatures, int[] startLines, int[] endLines) {
+        int size = signatures.length;
+        /*
+         * ключи сортировки: начало в битах 48-63, дополнение конца до 0xFFFF в битах 32-47 - при
+         * равном начале внешний (более длинный) интервал идет первым, номер метода в младших
+         * битах. Номера строк в файле класса - u2
+         */
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) (startLines[i] & 0xFFFF) << 48
+                    | (long) (0xFFFF - (endLines[i] & 0xFFFF)) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        this.signatures = new String[size];
+        this.startLines = new int[size];
+        this.endLines = new int[size];
+        for (int i = 0; i < size; i++) {
+            int index = (int) keys[i];
+            this.signatures[i] = signatures[index];
+            this.startLines[i] = startLines[index];
+            this.endLines[i] = endLines[index];
+        }
+
+        int leaves = 1;
+        while (leaves < size) {
+            leaves <<= 1;
+        }
+        this.leaves = leaves;
+        this.maxEnds = new int[leaves * 2];
+        Arrays.fill(maxEnds, Integer.MIN_VALUE);
+        System.arraycopy(this.endLines, 0, maxEnds, leaves, size);
+        for (int node = leaves - 1; node > 0; node--) {
+            maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Построить индекс по методам класса, у которых есть данные о строках.
+     *
+     * @param view представление класса
+     * @return индекс строк класса
+     */
+    public static LineMethodIndex of(ClassView view) {
+        Objects.requireNonNull(view);
+        int methodCount = view.methodCount();
+        String[] signatures = new String[methodCount];
+        int[] startLines = new int[methodCount];
+        int[] endLines = new int[methodCount];
+        int count = 0;
+        for (int i = 0; i < methodCount; i++) {
+            long range = view.lineRange(i);
+            if (range < 0) {
+                continue;
+            }
+            signatures[count] = view.methodSignature(i);
+            startLines[count] = (int) (range >>> 32);
+            endLines[count] = (int) range;
+            count++;
+        }
+        return new LineMethodIndex(Arrays.copyOf(signatures, count),
+                Arrays.copyOf(startLines, count), Arrays.copyOf(endLines, count));
+    }
+
+    /**
+     * @return количество методов в индексе
+     */
+    public int size() {
+        return signatures.length;
+    }
+
+    /**
+     * @param index индекс метода, методы упорядочены по начальной строке
+     * @return сигнатура метода
+     */
+    public String signature(int index) {
+        return signatures[index];
+    }
+
+    /**
+     * @param index индекс метода, методы упорядочены по начальной строке
+     * @return минимальный номер строки метода
+     */
+    public int startLine(int index) {
+        return startLines[index];
+    }
+
+    /**
+     * @param index индекс метода, методы упорядочены по начальной строке
+     * @return максимальный номер строки метода
+     */
+    public int endLine(int index) {
+        return endLines[index];
+    }
+
+    /**
+     * @param line номер строки
+     * @return индекс самого внутреннего метода, содержащего строку, или -1
+     */
+    public int indexAt(int line) {
+        int last = lastStartingAtOrBefore(line);
+        return last < 0 ? -1 : rightmost(1, 0, leaves - 1, last, line);
+    }
+
+    /**
+     * @param line номер строки
+     * @return сигнатура самого внутреннего метода, содержащего строку, или null
+     */
+    public String methodAt(int line) {
+        int index = indexAt(line);
+        return index >= 0 ? signatures[index] : null;
+    }
+
+    /**
+     * @param fromLine первая строка диапазона
+     * @param toLine   последняя строка диапазона
+     * @return индексы методов, пересекающих диапазон, по возрастанию начальной строки
+     */
+    public int[] indexesIn(int fromLine, int toLine) {
+        int last = lastStartingAtOrBefore(toLine);
+        if (last < 0 || fromLine > toLine) {
+            return new int[0];
+        }
+        List<Integer> result = new ArrayList<>();
+        collect(1, 0, leaves - 1, last, fromLine, result);
+        int[] indexes = new int[result.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = result.get(i);
+        }
+        return indexes;
+    }
+
+    /**
+     * @param fromLine первая строка диапазона
+     * @param toLine   последняя строка диапазона
+     * @return сигнатуры методов, пересекающих диапазон, по возрастанию начальной строки
+     */
+    public List<String> methodsIn(int fromLine, int toLine) {
+        int[] indexes = indexesIn(fromLine, toLine);
+        List<String> result = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            result.add(signatures[index]);
+        }
+        return result;
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    /**
+     * @return индекс последнего интервала с началом не больше line или -1
+     */
+    private int lastStartingAtOrBefore(int line) {
+        int low = 0;
+        int high = startLines.length - 1;
+        int result = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (startLines[middle] <= line) {
+                result = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return наибольший индекс не больше last в поддереве node, у которого конец не меньше
+     * line, или -1
+     */
+    private int rightmost(int node, int from, int to, int last, int line) {
+        if (from > last || maxEnds[node] < line) {
+            return -1;
+        }
+        if (from == to) {
+            return from;
+        }
+        int middle = (from + to) >>> 1;
+        int result = rightmost(2 * node + 1, middle + 1, to, last, line);
+        return result >= 0 ? result : rightmost(2 * node, from, middle, last, line);
+    }
+
+    private void collect(int node, int from, int to, int last, int line, List<Integer> result) {
+        if (from > last || maxEnds[node] < line) {
+            return;
+        }
+        if (from == to) {
+            result.add(from);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        collect(2 * node, from, middle, last, line, result);
+        collect(2 * node + 1, middle + 1, to, last, line, result);
+    }
+}
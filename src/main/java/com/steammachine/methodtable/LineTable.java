@@ -0,0 +1,132 @@
+package com.steammachine.methodtable;
+
+import java.util.Arrays;
+
+/**
+ * Таблица номеров строк метода (атрибут LineNumberTable) в компактном виде. <p>
+ * Начальные смещения байткода и номера строк в файле класса имеют размер u2 и хранятся без
+ * преобразования в параллельных массивах char (беззнаковые 16 бит), отсортированных по
+ * смещению. Поиск строки по смещению - двоичный поиск.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class LineTable {
+
+    static final LineTable EMPTY = new LineTable(new char[0], new char[0]);
+
+    private final char[] startPcs;
+    private final char[] lineNumbers;
+    private final int minLineNumber;
+    private final int maxLineNumber;
+
+    /**
+     * @param startPcs    смещения байткода, отсортированные по возрастанию
+     * @param lineNumbers номера строк, соответствующие смещениям
+     */
+    private LineTable(char[] startPcs, char[] lineNumbers) {
+        this.startPcs = startPcs;
+        this.lineNumbers = lineNumbers;
+        int min = Integer.MAX_VALUE;
+        int max = -1;
+        for (char lineNumber : lineNumbers) {
+            min = lineNumber < min ? lineNumber : min;
+            max = lineNumber > max ? lineNumber : max;
+        }
+        this.minLineNumber = lineNumbers.length > 0 ? min : -1;
+        this.maxLineNumber = max;
+    }
+
+    /**
+     * Создает таблицу из записей атрибута в произвольном порядке.
+     *
+     * @param entries записи в формате атрибута: start_pc в старших 16 битах, line_number в
+     *                младших
+     * @param count   количество записей
+     */
+    static LineTable of(int[] entries, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        /* start_pc занимает старшие биты - сортировка значений без знака (со сдвигом на
+           Integer.MIN_VALUE) упорядочивает записи по смещению */
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = entries[i] ^ Integer.MIN_VALUE;
+        }
+        Arrays.sort(sorted);
+        char[] startPcs = new char[count];
+        char[] lineNumbers = new char[count];
+        for (int i = 0; i < count; i++) {
+            int entry = sorted[i] ^ Integer.MIN_VALUE;
+            startPcs[i] = (char) (entry >>> 16);
+            lineNumbers[i] = (char) entry;
+        }
+        return new LineTable(startPcs, lineNumbers);
+    }
+
+    /**
+     * @return количество записей таблицы
+     */
+    public int size() {
+        return startPcs.length;
+    }
+
+    /**
+     * @param index индекс записи, записи упорядочены по смещению
+     * @return смещение байткода, с которого начинается строка
+     */
+    public int startPc(int index) {
+        return startPcs[index];
+    }
+
+    /**
+     * @param index индекс записи, записи упорядочены по смещению
+     * @return номер строки
+     */
+    public int lineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+    /**
+     * @param pc смещение инструкции в байткоде метода
+     * @return номер строки, к которой относится инструкция, или -1, если данных нет
+     */
+    public int lineAt(int pc) {
+        int low = 0;
+        int high = startPcs.length - 1;
+        int result = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (startPcs[middle] <= pc) {
+                result = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return result >= 0 ? lineNumbers[result] : -1;
+    }
+
+    /**
+     * @return минимальный номер строки метода или -1, если таблица пуста
+     */
+    public int minLineNumber() {
+        return minLineNumber;
+    }
+
+    /**
+     * @return максимальный номер строки метода или -1, если таблица пуста
+     */
+    public int maxLineNumber() {
+        return maxLineNumber;
+    }
+
+    @Override
+    public String toString() {
+        return "LineTable{" +
+                "size=" + startPcs.length +
+                ", minLineNumber=" + minLineNumber +
+                ", maxLineNumber=" + maxLineNumber +
+                '}';
+    }
+}
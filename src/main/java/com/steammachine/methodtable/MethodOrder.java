@@ -0,0 +1,148 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Упорядочивание методов класса в порядке их объявления в исходнике. <p>
+ * Методы упорядочиваются по минимальному номеру строки. Методы без данных о строках
+ * (абстрактные, native) ставятся сразу за методом, который предшествует им в файле класса -
+ * компилятор записывает методы в порядке объявления. Порядок для каждого класса вычисляется
+ * один раз и запоминается вместе с данными класса.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class MethodOrder {
+
+    /**
+     * Методы класса, для которых не удалось найти файл класса, идут после остальных.
+     */
+    private static final long UNKNOWN = Long.MAX_VALUE;
+
+    private static final ClassValue<DeclarationOrder> ORDERS = new ClassValue<DeclarationOrder>() {
+        @Override
+        protected DeclarationOrder computeValue(Class<?> type) {
+            return new DeclarationOrder(type);
+        }
+    };
+
+    private static final Comparator<Method> COMPARATOR = (left, right) -> {
+        Class<?> leftClass = left.getDeclaringClass();
+        Class<?> rightClass = right.getDeclaringClass();
+        if (leftClass != rightClass) {
+            return leftClass.getName().compareTo(rightClass.getName());
+        }
+        return ORDERS.get(leftClass).compare(left, right);
+    };
+
+    private MethodOrder() {
+    }
+
+    /**
+     * @return сравнение методов по порядку объявления, методы разных классов упорядочиваются
+     * по имени класса
+     */
+    public static Comparator<Method> comparator() {
+        return COMPARATOR;
+    }
+
+    /**
+     * @param clazz класс
+     * @return методы, объявленные в классе, в порядке объявления. Как и
+     * {@link Class#getDeclaredMethods()}, каждый вызов возвращает новые экземпляры методов.
+     */
+    public static List<Method> declaredMethods(Class<?> clazz) {
+        Objects.requireNonNull(clazz);
+        return ORDERS.get(clazz).sort(clazz.getDeclaredMethods());
+    }
+
+    /**
+     * Упорядочить методы нескольких классов. Файлы классов разбираются параллельно, каждый
+     * один раз.
+     *
+     * @param classes классы
+     * @return методы, объявленные в каждом классе, в порядке объявления - в порядке следования
+     * классов в аргументах
+     */
+    public static Map<Class<?>, List<Method>> sort(Class<?>... classes) {
+        Objects.requireNonNull(classes);
+        Arrays.stream(classes).parallel().forEach(ORDERS::get);
+
+        Map<Class<?>, List<Method>> result = new LinkedHashMap<>();
+        for (Class<?> clazz : classes) {
+            result.put(clazz, ORDERS.get(clazz).sort(clazz.getDeclaredMethods()));
+        }
+        return result;
+    }
+
+    /**
+     * Ключи сортировки методов класса в порядке объявления: номер строки в старших 32 битах,
+     * номер метода в файле - в младших. Методы без строк получают строку метода,
+     * предшествующего им в файле класса.
+     *
+     * @param methodCount количество методов в файле класса
+     * @param positions   данные о расположении метода по его номеру в файле класса
+     * @return ключи по номерам методов в файле класса
+     */
+    static long[] declarationKeys(int methodCount, IntFunction<SourceCodePosition> positions) {
+        long[] keys = new long[methodCount];
+        long line = -1;
+        for (int i = 0; i < methodCount; i++) {
+            SourceCodePosition position = positions.apply(i);
+            if (position.hasPosition()) {
+                line = position.minLineNumber();
+            }
+            keys[i] = (line << 32) | i;
+        }
+        return keys;
+    }
+
+    /**
+     * Порядок методов одного класса.
+     */
+    private static final class DeclarationOrder {
+
+        /**
+         * ключи сортировки: номер строки в старших 32 битах, номер метода в файле - в младших
+         */
+        private final Map<Method, Long> keys = new HashMap<>();
+
+        private DeclarationOrder(Class<?> type) {
+            ClassMethodLookup lookup = ClassMethodTable.lookup(type);
+            long[] fileKeys = declarationKeys(lookup.methodCount(), lookup::position);
+            for (Method method : type.getDeclaredMethods()) {
+                int index = lookup.indexOf(method);
+                keys.put(method, index >= 0 ? fileKeys[index] : UNKNOWN);
+            }
+        }
+
+        private List<Method> sort(Method[] methods) {
+            List<Method> result = new ArrayList<>(Arrays.asList(methods));
+            result.sort(this::compare);
+            return result;
+        }
+
+        private int compare(Method left, Method right) {
+            int compare = Long.compare(key(left), key(right));
+            if (compare != 0) {
+                return compare;
+            }
+            compare = left.getName().compareTo(right.getName());
+            return compare != 0 ? compare : left.toString().compareTo(right.toString());
+        }
+
+        private long key(Method method) {
+            Long key = keys.get(method);
+            return key != null ? key : UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.DefaultSourceCodePosition;
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Компактная неизменяемая таблица расположения методов класса. <p>
+ * Сигнатуры хранятся в отсортированном массиве, номера строк и порядковые номера методов - в
+ * параллельных массивах int. Отсутствие данных о расположении кодируется отрицательным номером
+ * строки, поэтому на метод не создается ни одного объекта кроме строки сигнатуры. Для
+ * совместимости таблица доступна в виде {@link Map} через {@link #asMap()}. <p>
+ * Таблицы, построенные разбором файла класса, хранят также сведения о байт-коде методов -
+ * флаги доступа, max_stack, max_locals, code_length и длину таблицы исключений: 12 байт на
+ * метод в двух параллельных массивах. Это позволяет, например, отбрасывать синтетические
+ * методы и мосты или оценивать размер методов без повторного разбора класса.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class MethodPositionTable {
+
+    private static final int NO_LINE = -1;
+
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private final String[] signatures;
+    private final int[] lineNumbers;
+    private final int[] orders;
+
+    /**
+     * полные таблицы номеров строк, если они сохранены
+     */
+    private final LineTable[] lineTables;
+
+    /**
+     * сведения о байт-коде, упакованные {@link #bytecode}, и code_length методов или null, если
+     * таблица построена без них
+     */
+    private final long[] bytecode;
+    private final int[] codeLengths;
+    private final Map<String, SourceCodePosition> map = new MapView();
+
+    private MethodPositionTable(String[] signatures, int[] lineNumbers, int[] orders,
+            LineTable[] lineTables, long[] bytecode, int[] codeLengths) {
+        this.signatures = signatures;
+        this.lineNumbers = lineNumbers;
+        this.orders = orders;
+        this.lineTables = lineTables;
+        this.bytecode = bytecode;
+        this.codeLengths = codeLengths;
+    }
+
+    /**
+     * @param positions данные о расположении методов
+     * @return таблица с теми же данными
+     */
+    public static MethodPositionTable of(Map<String, SourceCodePosition> positions) {
+        Objects.requireNonNull(positions);
+        if (positions instanceof MapView) {
+            return ((MapView) positions).table();
+        }
+        int size = positions.size();
+        String[] signatures = new String[size];
+        int[] lineNumbers = new int[size];
+        int[] orders = new int[size];
+        int i = 0;
+        for (Map.Entry<String, SourceCodePosition> entry : positions.entrySet()) {
+            SourceCodePosition position = entry.getValue();
+            signatures[i] = entry.getKey();
+            lineNumbers[i] = position.hasPosition() ? position.minLineNumber() : NO_LINE;
+            orders[i] = position.order();
+            i++;
+        }
+        return sorted(signatures, lineNumbers, orders, null, null, null);
+    }
+
+    /**
+     * Создает таблицу из параллельных массивов, массивы переходят во владение таблицы.
+     *
+     * @param lineNumbers минимальные номера строк, отрицательное значение - нет данных
+     * @param lineTables  полные таблицы номеров строк или null, если они не сохраняются
+     * @param bytecode    сведения о байт-коде, упакованные {@link #bytecode}, или null
+     * @param codeLengths code_length методов, 0 - у метода нет кода; null вместе с bytecode
+     */
+    static MethodPositionTable sorted(String[] signatures, int[] lineNumbers, int[] orders,
+            LineTable[] lineTables, long[] bytecode, int[] codeLengths) {
+        int[] permutation = new int[signatures.length];
+        for (int i = 0; i < permutation.length; i++) {
+            permutation[i] = i;
+        }
+        if (permutation.length > 1) {
+            sortBySignature(permutation.clone(), permutation, 0, permutation.length, signatures);
+        }
+
+        String[] sortedSignatures = new String[signatures.length];
+        int[] sortedLineNumbers = new int[signatures.length];
+        int[] sortedOrders = new int[signatures.length];
+        LineTable[] sortedLineTables = lineTables != null ? new LineTable[signatures.length] : null;
+        long[] sortedBytecode = bytecode != null ? new long[signatures.length] : null;
+        int[] sortedCodeLengths = bytecode != null ? new int[signatures.length] : null;
+        for (int i = 0; i < permutation.length; i++) {
+            int index = permutation[i];
+            sortedSignatures[i] = signatures[index];
+            sortedLineNumbers[i] = lineNumbers[index] < 0 ? NO_LINE : lineNumbers[index];
+            sortedOrders[i] = orders[index];
+            if (sortedLineTables != null) {
+                sortedLineTables[i] = lineTables[index];
+            }
+            if (sortedBytecode != null) {
+                sortedBytecode[i] = bytecode[index];
+                sortedCodeLengths[i] = codeLengths[index];
+            }
+        }
+        return new MethodPositionTable(sortedSignatures, sortedLineNumbers, sortedOrders,
+                sortedLineTables, sortedBytecode, sortedCodeLengths);
+    }
+
+    /**
+     * Сортирует слиянием индексы из source[low, high) в target[low, high) по сигнатурам, без
+     * упаковки индексов в объекты. В начале оба массива содержат одинаковые индексы.
+     */
+    private static void sortBySignature(int[] source, int[] target, int low, int high,
+            String[] signatures) {
+        if (high - low < 8) {
+            for (int i = low + 1; i < high; i++) {
+                int index = target[i];
+                int j = i;
+                for (; j > low && signatures[target[j - 1]].compareTo(signatures[index]) > 0; j--) {
+                    target[j] = target[j - 1];
+                }
+                target[j] = index;
+            }
+            return;
+        }
+        int middle = (low + high) >>> 1;
+        sortBySignature(target, source, low, middle, signatures);
+        sortBySignature(target, source, middle, high, signatures);
+        for (int i = low, left = low, right = middle; i < high; i++) {
+            if (right >= high || left < middle
+                    && signatures[source[left]].compareTo(signatures[source[right]]) <= 0) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    /**
+     * упаковывает сведения о байт-коде метода в одно значение long
+     */
+    static long bytecode(int accessFlags, int maxStack, int maxLocals, int exceptionTableLength) {
+        return (long) (accessFlags & 0xFFFF) << 48 | (long) (maxStack & 0xFFFF) << 32
+                | (long) (maxLocals & 0xFFFF) << 16 | exceptionTableLength & 0xFFFF;
+    }
+
+    /**
+     * @return количество методов
+     */
+    public int size() {
+        return signatures.length;
+    }
+
+    /**
+     * @param signature сигнатура метода в формате {@link ClassMethodTable#methodSignature}
+     * @return индекс метода в таблице или отрицательное значение, если метод не найден
+     */
+    public int indexOf(String signature) {
+        return Arrays.binarySearch(signatures, signature);
+    }
+
+    /**
+     * @param index индекс метода в таблице (методы упорядочены по сигнатуре)
+     * @return сигнатура метода
+     */
+    public String signature(int index) {
+        return signatures[index];
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return минимальный номер строки метода или -1, если данных о расположении нет
+     */
+    public int minLineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return порядковый номер метода в файле класса
+     */
+    public int order(int index) {
+        return orders[index];
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return есть ли данные о расположении метода в исходнике
+     */
+    public boolean hasPosition(int index) {
+        return lineNumbers[index] != NO_LINE;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return полная таблица номеров строк метода или null, если таблица была построена без
+     * них
+     * @see ClassView#methodTable(boolean)
+     */
+    public LineTable lineTable(int index) {
+        return lineTables != null ? lineTables[index] : null;
+    }
+
+    /**
+     * @return хранит ли таблица сведения о байт-коде методов
+     */
+    public boolean hasBytecode() {
+        return bytecode != null;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return флаги доступа метода (access_flags) или -1, если таблица построена без сведений о
+     * байт-коде
+     */
+    public int accessFlags(int index) {
+        return bytecode != null ? (int) (bytecode[index] >>> 48) : -1;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return создан ли метод компилятором (ACC_SYNTHETIC): реализации лямбд, методы доступа
+     * и т.п.; false, если таблица построена без сведений о байт-коде
+     */
+    public boolean isSynthetic(int index) {
+        return bytecode != null && (accessFlags(index) & ACC_SYNTHETIC) != 0;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return является ли метод мостом (ACC_BRIDGE); false, если таблица построена без сведений
+     * о байт-коде
+     */
+    public boolean isBridge(int index) {
+        return bytecode != null && (accessFlags(index) & ACC_BRIDGE) != 0;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return max_stack метода, 0 - у метода нет кода, -1 - нет сведений о байт-коде
+     */
+    public int maxStack(int index) {
+        return bytecode != null ? (int) (bytecode[index] >>> 32) & 0xFFFF : -1;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return max_locals метода, 0 - у метода нет кода, -1 - нет сведений о байт-коде
+     */
+    public int maxLocals(int index) {
+        return bytecode != null ? (int) (bytecode[index] >>> 16) & 0xFFFF : -1;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return размер байт-кода метода (code_length), 0 - у метода нет кода (абстрактные и native
+     * методы), -1 - нет сведений о байт-коде
+     */
+    public int codeLength(int index) {
+        return codeLengths != null ? codeLengths[index] : -1;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return количество обработчиков исключений метода, -1 - нет сведений о байт-коде
+     */
+    public int exceptionTableLength(int index) {
+        return bytecode != null ? (int) bytecode[index] & 0xFFFF : -1;
+    }
+
+    /**
+     * @param index индекс метода в таблице
+     * @return данные о расположении метода
+     */
+    public SourceCodePosition position(int index) {
+        return new DefaultSourceCodePosition(lineNumbers[index], orders[index], hasPosition(index));
+    }
+
+    /**
+     * @param signature сигнатура метода в формате {@link ClassMethodTable#methodSignature}
+     * @return данные о расположении метода или null, если метод не найден
+     */
+    public SourceCodePosition get(String signature) {
+        int index = indexOf(signature);
+        return index >= 0 ? position(index) : null;
+    }
+
+    /**
+     * @param pool пул строк
+     * @return таблица с теми же данными, сигнатуры которой взяты из пула; эта же таблица, если
+     * все ее сигнатуры уже из пула
+     */
+    public MethodPositionTable deduplicated(StringPool pool) {
+        Objects.requireNonNull(pool);
+        String[] pooled = null;
+        for (int i = 0; i < signatures.length; i++) {
+            String signature = pool.intern(signatures[i]);
+            if (signature != signatures[i] && pooled == null) {
+                pooled = signatures.clone();
+            }
+            if (pooled != null) {
+                pooled[i] = signature;
+            }
+        }
+        return pooled == null ? this
+                : new MethodPositionTable(pooled, lineNumbers, orders, lineTables, bytecode,
+                        codeLengths);
+    }
+
+    /**
+     * @return неизменяемое представление таблицы в виде {@link Map}
+     */
+    public Map<String, SourceCodePosition> asMap() {
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "MethodPositionTable" + map;
+    }
+
+    /**
+     * Представление таблицы в виде {@link Map}. Значения создаются при обращении к ним.
+     */
+    private final class MapView extends AbstractMap<String, SourceCodePosition> {
+
+        private MethodPositionTable table() {
+            return MethodPositionTable.this;
+        }
+
+        @Override
+        public int size() {
+            return signatures.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && indexOf((String) key) >= 0;
+        }
+
+        @Override
+        public SourceCodePosition get(Object key) {
+            return key instanceof String ? MethodPositionTable.this.get((String) key) : null;
+        }
+
+        @Override
+        public Set<Entry<String, SourceCodePosition>> entrySet() {
+            return new AbstractSet<Entry<String, SourceCodePosition>>() {
+                @Override
+                public Iterator<Entry<String, SourceCodePosition>> iterator() {
+                    return new Iterator<Entry<String, SourceCodePosition>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < signatures.length;
+                        }
+
+                        @Override
+                        public Entry<String, SourceCodePosition> next() {
+                            if (index >= signatures.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = index++;
+                            return new SimpleImmutableEntry<>(signatures[current],
+                                    position(current));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return signatures.length;
+                }
+            };
+        }
+    }
+}
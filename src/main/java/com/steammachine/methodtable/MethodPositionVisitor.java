@@ -0,0 +1,25 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+
+/**
+ * Получает данные о методах класса по мере разбора структур method_info.
+ *
+ * @author Vladimir Bogodukhov
+ * @see ClassMethodTable#visitClass(java.io.InputStream, MethodPositionVisitor)
+ * @see ClassView#visit(MethodPositionVisitor)
+ */
+@FunctionalInterface
+public interface MethodPositionVisitor {
+
+    /**
+     * @param name        имя метода
+     * @param descriptor  дескриптор метода в формате JVM, например {@code (ILjava/lang/String;)V}
+     * @param accessFlags флаги доступа метода
+     * @param position    данные о расположении метода
+     * @return true - продолжить разбор, false - остановить разбор, остальные методы и атрибуты
+     * класса не читаются
+     */
+    boolean visitMethod(String name, String descriptor, int accessFlags,
+            SourceCodePosition position);
+}
@@ -0,0 +1,265 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Счетчики разбора файлов классов. <p>
+ * По умолчанию метрики выключены: точки учета читают одно volatile поле и больше ничего не
+ * делают, время не замеряется. {@link #enable()} (или системное свойство
+ * {@code com.steammachine.methodtable.metrics=true}) включает учет и регистрирует MXBean
+ * {@value #OBJECT_NAME} в платформенном {@link MBeanServer}. Учитываются разборы через
+ * {@link ClassMethodTable}, {@link ClassMethodTableParser} и {@link ClasspathIndexer}.
+ * Счетчики - {@link LongAdder}, поэтому учет из многих потоков не создает конкуренции.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class ParserMetrics implements ParserMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.steammachine.methodtable:type=ParserMetrics";
+
+    static final String ENABLED_PROPERTY = "com.steammachine.methodtable.metrics";
+
+    private static final long[] BUCKETS_MICROS = {10, 50, 100, 500, 1_000, 5_000, 10_000, 50_000,
+            100_000};
+
+    /**
+     * ограничение количества различных причин ошибок, остальные учитываются вместе
+     */
+    private static final int MAX_CAUSES = 64;
+    private static final String OTHER_CAUSE = "other";
+
+    private static volatile ParserMetrics active;
+    private static ParserMetrics instance;
+
+    private final LongAdder classesParsed = new LongAdder();
+    private final LongAdder bytesParsed = new LongAdder();
+    private final LongAdder constantPoolEntries = new LongAdder();
+    private final LongAdder methodsWithLineNumbers = new LongAdder();
+    private final LongAdder methodsWithoutLineNumbers = new LongAdder();
+    private final LongAdder parseTimeNanos = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[BUCKETS_MICROS.length + 1];
+    private final LongAdder failures = new LongAdder();
+    private final Map<String, LongAdder> failuresByCause = new ConcurrentHashMap<>();
+
+    static {
+        if (Boolean.getBoolean(ENABLED_PROPERTY)) {
+            enable();
+        }
+    }
+
+    private ParserMetrics() {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Включить учет и зарегистрировать MXBean. Повторный вызов возвращает тот же экземпляр,
+     * накопленные значения сохраняются.
+     *
+     * @return метрики
+     */
+    public static synchronized ParserMetrics enable() {
+        if (instance == null) {
+            instance = new ParserMetrics();
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(instance, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("unable to register " + OBJECT_NAME, e);
+        }
+        active = instance;
+        return instance;
+    }
+
+    /**
+     * Выключить учет и снять MXBean с регистрации. Накопленные значения сохраняются до
+     * следующего {@link #enable()}.
+     */
+    public static synchronized void disable() {
+        active = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("unable to unregister " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * @return включенные метрики или null, если учет выключен
+     */
+    static ParserMetrics active() {
+        return active;
+    }
+
+    @Override
+    public long getClassesParsed() {
+        return classesParsed.sum();
+    }
+
+    @Override
+    public long getBytesParsed() {
+        return bytesParsed.sum();
+    }
+
+    @Override
+    public long getConstantPoolEntries() {
+        return constantPoolEntries.sum();
+    }
+
+    @Override
+    public long getMethodsWithLineNumbers() {
+        return methodsWithLineNumbers.sum();
+    }
+
+    @Override
+    public long getMethodsWithoutLineNumbers() {
+        return methodsWithoutLineNumbers.sum();
+    }
+
+    @Override
+    public long getParseTimeNanos() {
+        return parseTimeNanos.sum();
+    }
+
+    @Override
+    public long[] getParseTimeBucketsMicros() {
+        return BUCKETS_MICROS.clone();
+    }
+
+    @Override
+    public long[] getParseTimeHistogram() {
+        long[] result = new long[histogram.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram[i].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByCause() {
+        Map<String, Long> result = new TreeMap<>();
+        failuresByCause.forEach((cause, count) -> result.put(cause, count.sum()));
+        return result;
+    }
+
+    @Override
+    public long getSignatureCacheHits() {
+        return SignatureCache.shared().hits();
+    }
+
+    @Override
+    public long getSignatureCacheMisses() {
+        return SignatureCache.shared().misses();
+    }
+
+    @Override
+    public double getSignatureCacheHitRate() {
+        return SignatureCache.shared().hitRate();
+    }
+
+    @Override
+    public void reset() {
+        classesParsed.reset();
+        bytesParsed.reset();
+        constantPoolEntries.reset();
+        methodsWithLineNumbers.reset();
+        methodsWithoutLineNumbers.reset();
+        parseTimeNanos.reset();
+        for (LongAdder bucket : histogram) {
+            bucket.reset();
+        }
+        failures.reset();
+        failuresByCause.clear();
+    }
+
+    /**
+     * учесть разобранный класс
+     *
+     * @param startNanos значение {@link System#nanoTime()} перед разбором
+     */
+    void parsed(long startNanos, int bytes, int constants, int withLineNumbers,
+            int withoutLineNumbers) {
+        long elapsed = System.nanoTime() - startNanos;
+        classesParsed.increment();
+        bytesParsed.add(bytes);
+        constantPoolEntries.add(constants);
+        methodsWithLineNumbers.add(withLineNumbers);
+        methodsWithoutLineNumbers.add(withoutLineNumbers);
+        parseTimeNanos.add(elapsed);
+
+        long micros = elapsed / 1_000;
+        int bucket = 0;
+        while (bucket < BUCKETS_MICROS.length && micros >= BUCKETS_MICROS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket].increment();
+    }
+
+    /**
+     * учесть разобранный класс
+     *
+     * @param positions данные о расположении методов класса
+     */
+    void parsed(long startNanos, int bytes, int constants,
+            Iterable<SourceCodePosition> positions) {
+        int withLineNumbers = 0;
+        int withoutLineNumbers = 0;
+        for (SourceCodePosition position : positions) {
+            if (position.hasPosition()) {
+                withLineNumbers++;
+            } else {
+                withoutLineNumbers++;
+            }
+        }
+        parsed(startNanos, bytes, constants, withLineNumbers, withoutLineNumbers);
+    }
+
+    /**
+     * учесть неудачный разбор
+     */
+    void failed(Throwable error) {
+        failures.increment();
+        String cause = cause(error);
+        LongAdder counter = failuresByCause.get(cause);
+        if (counter == null) {
+            counter = failuresByCause.size() < MAX_CAUSES
+                    ? failuresByCause.computeIfAbsent(cause, key -> new LongAdder())
+                    : failuresByCause.computeIfAbsent(OTHER_CAUSE, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    /**
+     * числа в сообщениях (теги, индексы, смещения) заменяются, чтобы одинаковые ошибки
+     * попадали в один счетчик
+     */
+    private static String cause(Throwable error) {
+        String message = error.getMessage();
+        String type = error.getClass().getName();
+        return message == null ? type : type + ": " + message.trim().replaceAll("\\d+", "#");
+    }
+}
@@ -0,0 +1,86 @@
+package com.steammachine.methodtable;
+
+import java.util.Map;
+
+/**
+ * Метрики разбора файлов классов, публикуемые через JMX.
+ *
+ * @author Vladimir Bogodukhov
+ * @see ParserMetrics
+ */
+public interface ParserMetricsMXBean {
+
+    /**
+     * @return количество успешно разобранных классов
+     */
+    long getClassesParsed();
+
+    /**
+     * @return суммарный размер разобранных файлов классов в байтах
+     */
+    long getBytesParsed();
+
+    /**
+     * @return суммарное количество элементов таблиц констант разобранных классов
+     */
+    long getConstantPoolEntries();
+
+    /**
+     * @return количество методов, для которых найдены номера строк
+     */
+    long getMethodsWithLineNumbers();
+
+    /**
+     * @return количество методов без номеров строк (абстрактные, native, классы без отладочной
+     * информации)
+     */
+    long getMethodsWithoutLineNumbers();
+
+    /**
+     * @return суммарное время разбора в наносекундах
+     */
+    long getParseTimeNanos();
+
+    /**
+     * @return верхние границы интервалов гистограммы времени разбора в микросекундах, последний
+     * интервал не ограничен
+     */
+    long[] getParseTimeBucketsMicros();
+
+    /**
+     * @return количество разборов в каждом интервале {@link #getParseTimeBucketsMicros()}, на
+     * один элемент длиннее массива границ
+     */
+    long[] getParseTimeHistogram();
+
+    /**
+     * @return количество неудачных разборов
+     */
+    long getFailures();
+
+    /**
+     * @return количество неудачных разборов по причинам: класс исключения и сообщение, в
+     * котором числа заменены на {@code #}
+     */
+    Map<String, Long> getFailuresByCause();
+
+    /**
+     * @return количество попаданий в общий кэш сигнатур {@link SignatureCache#shared()}
+     */
+    long getSignatureCacheHits();
+
+    /**
+     * @return количество промахов общего кэша сигнатур
+     */
+    long getSignatureCacheMisses();
+
+    /**
+     * @return доля попаданий в общий кэш сигнатур
+     */
+    double getSignatureCacheHitRate();
+
+    /**
+     * обнулить все счетчики
+     */
+    void reset();
+}
@@ -0,0 +1,447 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.DefaultSourceCodePosition;
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Хранилище данных о расположении методов jar файлов на диске. <p>
+ * Для каждого jar файла создается отдельный файл индекса, ключом которого служат путь, размер и
+ * время изменения jar файла. Индекс открывается через {@link FileChannel#map}, поиск идет прямо
+ * по отображению без разбора классов. Если jar файл изменился, индекс перестраивается при
+ * следующем обращении к нему. <p>
+ * Формат файла индекса (big endian):
+ * <pre>
+ * u4 magic; u4 version; u8 jar_size; u8 jar_last_modified; u4 class_count;
+ * u2 jar_path_length; u1 jar_path[jar_path_length];
+ * class_entry classes[class_count];     // отсортированы по байтам имени класса
+ *     u4 name_offset; u4 methods_offset; u4 method_count;
+ * method_entry methods[];               // для каждого класса отсортированы по байтам сигнатуры
+ *     u4 signature_offset; u4 min_line_number; u4 order; u4 has_position;
+ * string strings[];                     // u2 length; u1 bytes[length] - модифицированный UTF-8
+ * </pre>
+ *
+ * @author Vladimir Bogodukhov
+ */
+public class PersistentPositionIndex {
+
+    static final int MAGIC = 0x4C4D4958; // "LMIX"
+    static final int VERSION = 1;
+
+    private static final int CLASS_ENTRY_SIZE = 12;
+    private static final int METHOD_ENTRY_SIZE = 16;
+    private static final String INDEX_SUFFIX = ".lmidx";
+
+    private final Path directory;
+    private final ClasspathIndexer indexer;
+    private final Map<Path, JarIndex> opened = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory каталог для файлов индекса
+     */
+    public PersistentPositionIndex(Path directory) {
+        this(directory, new ClasspathIndexer());
+    }
+
+    /**
+     * @param directory каталог для файлов индекса
+     * @param indexer   используется для построения индекса измененных jar файлов
+     */
+    public PersistentPositionIndex(Path directory, ClasspathIndexer indexer) {
+        this.directory = Objects.requireNonNull(directory);
+        this.indexer = Objects.requireNonNull(indexer);
+    }
+
+    /**
+     * Открыть индекс jar файла. Если индекса нет или jar файл изменился после его построения,
+     * индекс строится заново.
+     *
+     * @param jar jar файл
+     * @return индекс jar файла
+     * @throws IOException если jar файл или какой-либо его класс не удалось прочитать
+     */
+    public JarIndex open(Path jar) throws IOException {
+        Path key = jar.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        JarIndex index = opened.get(key);
+        if (index != null && index.matches(key, size, lastModified)) {
+            return index;
+        }
+
+        Path indexFile = directory.resolve(indexFileName(key));
+        index = map(indexFile);
+        if (index == null || !index.matches(key, size, lastModified)) {
+            /* неполный индекс не сохраняется - иначе он совпадет с jar файлом и не перестроится */
+            Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            Map<String, Map<String, SourceCodePosition>> classes = indexer.index(
+                    Collections.singletonList(key), (source, error) -> errors.add(error));
+            if (!errors.isEmpty()) {
+                IOException exception = new IOException("unable to index " + key + ": "
+                        + errors.size() + " error(s)", errors.peek());
+                errors.stream().skip(1).forEach(exception::addSuppressed);
+                throw exception;
+            }
+            write(indexFile, key, size, lastModified, classes);
+            index = map(indexFile);
+            if (index == null) {
+                throw new IllegalStateException("unable to read index " + indexFile);
+            }
+        }
+        opened.put(key, index);
+        return index;
+    }
+
+    /**
+     * Индекс одного jar файла, отображенный в память.
+     */
+    public static final class JarIndex {
+
+        private final ByteBuffer data;
+        private final String jar;
+        private final long jarSize;
+        private final long jarLastModified;
+        private final int classCount;
+        private final int classesOffset;
+
+        private JarIndex(ByteBuffer data) {
+            this.data = data;
+            this.jarSize = data.getLong(8);
+            this.jarLastModified = data.getLong(16);
+            this.classCount = data.getInt(24);
+            int pathLength = data.getShort(28) & 0xFFFF;
+            this.jar = ClassMethodTable.decodeUTF(data, 30, pathLength);
+            this.classesOffset = 30 + pathLength;
+        }
+
+        /**
+         * @return путь к jar файлу
+         */
+        public String jar() {
+            return jar;
+        }
+
+        /**
+         * @return количество классов в индексе
+         */
+        public int classCount() {
+            return classCount;
+        }
+
+        /**
+         * @param className имя класса в формате {@link Class#getName()}
+         * @return есть ли класс в индексе
+         */
+        public boolean contains(String className) {
+            return findClass(encode(className)) >= 0;
+        }
+
+        /**
+         * @param className имя класса в формате {@link Class#getName()}
+         * @param signature сигнатура метода в формате {@link ClassMethodTable#methodSignature}
+         * @return данные о расположении метода или null, если метод не найден
+         */
+        public SourceCodePosition position(String className, String signature) {
+            int classEntry = findClass(encode(className));
+            if (classEntry < 0) {
+                return null;
+            }
+            int methodsOffset = data.getInt(classEntry + 4);
+            byte[] key = encode(signature);
+            int low = 0;
+            int high = data.getInt(classEntry + 8) - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int entry = methodsOffset + middle * METHOD_ENTRY_SIZE;
+                int compare = compareString(data.getInt(entry), key);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return readPosition(entry);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param className имя класса в формате {@link Class#getName()}
+         * @return данные о расположении методов класса или null, если класс не найден
+         */
+        public Map<String, SourceCodePosition> positions(String className) {
+            int classEntry = findClass(encode(className));
+            if (classEntry < 0) {
+                return null;
+            }
+            int methodsOffset = data.getInt(classEntry + 4);
+            int methodCount = data.getInt(classEntry + 8);
+            Map<String, SourceCodePosition> result = new HashMap<>();
+            for (int i = 0; i < methodCount; i++) {
+                int entry = methodsOffset + i * METHOD_ENTRY_SIZE;
+                result.put(readString(data.getInt(entry)), readPosition(entry));
+            }
+            return result;
+        }
+
+        private boolean matches(Path jar, long size, long lastModified) {
+            return jarSize == size && jarLastModified == lastModified
+                    && this.jar.equals(jar.toString());
+        }
+
+        private int findClass(byte[] key) {
+            int low = 0;
+            int high = classCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int entry = classesOffset + middle * CLASS_ENTRY_SIZE;
+                int compare = compareString(data.getInt(entry), key);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        private SourceCodePosition readPosition(int entry) {
+            return new DefaultSourceCodePosition(data.getInt(entry + 4), data.getInt(entry + 8),
+                    data.getInt(entry + 12) != 0);
+        }
+
+        private String readString(int offset) {
+            return ClassMethodTable.decodeUTF(data, offset + 2, data.getShort(offset) & 0xFFFF);
+        }
+
+        /**
+         * сравнивает строку индекса с ключом побайтно, без знака
+         */
+        private int compareString(int offset, byte[] key) {
+            int length = data.getShort(offset) & 0xFFFF;
+            offset += 2;
+            int common = Math.min(length, key.length);
+            for (int i = 0; i < common; i++) {
+                int compare = (data.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return length - key.length;
+        }
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private static JarIndex map(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 30 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || !isConsistent(data)) {
+                return null;
+            }
+            return new JarIndex(data);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * проверяет, что таблицы классов и методов и все строки лежат внутри файла - усеченный или
+     * испорченный файл считается отсутствующим и перестраивается
+     */
+    private static boolean isConsistent(ByteBuffer data) {
+        long size = data.limit();
+        int classCount = data.getInt(24);
+        long classesOffset = 30L + (data.getShort(28) & 0xFFFF);
+        long methodsStart = classesOffset + (long) classCount * CLASS_ENTRY_SIZE;
+        if (classCount < 0 || methodsStart > size) {
+            return false;
+        }
+        for (long classEntry = classesOffset; classEntry < methodsStart;
+                classEntry += CLASS_ENTRY_SIZE) {
+            int methodsOffset = data.getInt((int) classEntry + 4);
+            int methodCount = data.getInt((int) classEntry + 8);
+            long methodsEnd = methodsOffset + (long) methodCount * METHOD_ENTRY_SIZE;
+            if (!isString(data, data.getInt((int) classEntry)) || methodCount < 0
+                    || methodsOffset < methodsStart || methodsEnd > size) {
+                return false;
+            }
+            for (long entry = methodsOffset; entry < methodsEnd; entry += METHOD_ENTRY_SIZE) {
+                if (!isString(data, data.getInt((int) entry))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isString(ByteBuffer data, int offset) {
+        return offset >= 30 && offset <= data.limit() - 2
+                && offset + 2L + (data.getShort(offset) & 0xFFFF) <= data.limit();
+    }
+
+    private void write(Path indexFile, Path jar, long size, long lastModified,
+            Map<String, Map<String, SourceCodePosition>> classes) throws IOException {
+        Files.createDirectories(directory);
+
+        /* ключи сортируются по байтам в том же кодировании, в котором по ним идет поиск */
+        TreeMap<byte[], Map<String, SourceCodePosition>> sorted =
+                new TreeMap<>(PersistentPositionIndex::compareBytes);
+        int methodCount = 0;
+        for (Map.Entry<String, Map<String, SourceCodePosition>> entry : classes.entrySet()) {
+            sorted.put(encode(entry.getKey()), entry.getValue());
+            methodCount += entry.getValue().size();
+        }
+
+        byte[] path = encode(jar.toString());
+        int headerSize = 30 + path.length;
+        int methodsStart = headerSize + sorted.size() * CLASS_ENTRY_SIZE;
+        int stringsStart = methodsStart + methodCount * METHOD_ENTRY_SIZE;
+
+        /* одинаковые строки (например сигнатуры конструкторов) хранятся один раз */
+        Map<String, Integer> stringOffsets = new LinkedHashMap<>();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringsOut = new DataOutputStream(strings);
+
+        Path temp = Files.createTempFile(directory, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeInt(sorted.size());
+                out.writeShort(path.length);
+                out.write(path);
+
+                List<List<Map.Entry<byte[], SourceCodePosition>>> methods = new ArrayList<>();
+                int methodsOffset = methodsStart;
+                for (Map.Entry<byte[], Map<String, SourceCodePosition>> entry : sorted.entrySet()) {
+                    out.writeInt(stringsStart + stringOffset(entry.getKey(), stringOffsets, stringsOut));
+                    out.writeInt(methodsOffset);
+                    out.writeInt(entry.getValue().size());
+                    methodsOffset += entry.getValue().size() * METHOD_ENTRY_SIZE;
+
+                    TreeMap<byte[], SourceCodePosition> sortedMethods =
+                            new TreeMap<>(PersistentPositionIndex::compareBytes);
+                    for (Map.Entry<String, SourceCodePosition> method : entry.getValue().entrySet()) {
+                        sortedMethods.put(encode(method.getKey()), method.getValue());
+                    }
+                    methods.add(new ArrayList<>(sortedMethods.entrySet()));
+                }
+
+                for (List<Map.Entry<byte[], SourceCodePosition>> classMethods : methods) {
+                    for (Map.Entry<byte[], SourceCodePosition> method : classMethods) {
+                        SourceCodePosition position = method.getValue();
+                        out.writeInt(stringsStart + stringOffset(method.getKey(), stringOffsets,
+                                stringsOut));
+                        out.writeInt(position.minLineNumber());
+                        out.writeInt(position.order());
+                        out.writeInt(position.hasPosition() ? 1 : 0);
+                    }
+                }
+                stringsOut.flush();
+                strings.writeTo(out);
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static int stringOffset(byte[] value, Map<String, Integer> offsets,
+            DataOutputStream strings) throws IOException {
+        String key = new String(value, StandardCharsets.ISO_8859_1);
+        Integer offset = offsets.get(key);
+        if (offset == null) {
+            offset = strings.size();
+            offsets.put(key, offset);
+            strings.writeShort(value.length);
+            strings.write(value);
+        }
+        return offset;
+    }
+
+    /**
+     * @return строка в модифицированной кодировке UTF-8 (без длины)
+     */
+    static byte[] encode(String value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length() + 2);
+        try {
+            new DataOutputStream(bytes).writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] result = bytes.toByteArray();
+        byte[] withoutLength = new byte[result.length - 2];
+        System.arraycopy(result, 2, withoutLength, 0, withoutLength.length);
+        return withoutLength;
+    }
+
+    static int compareBytes(byte[] left, byte[] right) {
+        int common = Math.min(left.length, right.length);
+        for (int i = 0; i < common; i++) {
+            int compare = (left[i] & 0xFF) - (right[i] & 0xFF);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return left.length - right.length;
+    }
+
+    private static String indexFileName(Path jar) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(jar.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(String.valueOf(jar.getFileName()));
+            builder.append('-');
+            for (int i = 0; i < 8; i++) {
+                builder.append(String.format("%02x", hash[i]));
+            }
+            return builder.append(INDEX_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.steammachine.methodtable;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Агент {@code java.lang.instrument}, индексирующий все загружаемые классы. <p>
+ * Подключается ключом {@code -javaagent:linemapper.jar[=параметры]} или динамически через
+ * Attach API. Параметры через запятую:
+ * <ul>
+ * <li>{@code queue=N} - размер очереди классов, ожидающих разбора (по умолчанию
+ * {@value #DEFAULT_QUEUE_SIZE});</li>
+ * <li>{@code retransform} - при динамическом подключении проиндексировать уже загруженные
+ * классы, повторно получив их байты через {@link Instrumentation#retransformClasses}.</li>
+ * </ul>
+ * Результаты доступны через {@link #store()}.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class PositionAgent {
+
+    static final int DEFAULT_QUEUE_SIZE = 10_000;
+
+    private static volatile AgentPositionStore store;
+    private static volatile ClassIndexingTransformer transformer;
+
+    private PositionAgent() {
+    }
+
+    public static void premain(String agentArgs, Instrumentation instrumentation) {
+        install(agentArgs, instrumentation, false);
+    }
+
+    public static void agentmain(String agentArgs, Instrumentation instrumentation) {
+        install(agentArgs, instrumentation, true);
+    }
+
+    /**
+     * @return хранилище данных о расположении методов или null, если агент не подключен
+     */
+    public static AgentPositionStore store() {
+        return store;
+    }
+
+    /**
+     * @return трансформер агента (для счетчиков) или null, если агент не подключен
+     */
+    public static ClassIndexingTransformer transformer() {
+        return transformer;
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private static synchronized void install(String agentArgs, Instrumentation instrumentation,
+            boolean attached) {
+        if (transformer != null) {
+            return;
+        }
+        int queueSize = DEFAULT_QUEUE_SIZE;
+        boolean retransform = false;
+        if (agentArgs != null) {
+            for (String argument : agentArgs.split(",")) {
+                String option = argument.trim();
+                if (option.startsWith("queue=")) {
+                    queueSize = Integer.parseInt(option.substring("queue=".length()));
+                } else if (option.equals("retransform")) {
+                    retransform = true;
+                } else if (!option.isEmpty()) {
+                    throw new IllegalArgumentException("unknown agent option " + option);
+                }
+            }
+        }
+
+        AgentPositionStore positions = new AgentPositionStore();
+        ClassIndexingTransformer indexer = new ClassIndexingTransformer(positions, queueSize)
+                .start();
+        store = positions;
+        transformer = indexer;
+
+        boolean canRetransform = attached && retransform
+                && instrumentation.isRetransformClassesSupported();
+        instrumentation.addTransformer(indexer, canRetransform);
+        if (canRetransform) {
+            List<Class<?>> loaded = new ArrayList<>();
+            for (Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+                if (instrumentation.isModifiableClass(clazz)) {
+                    loaded.add(clazz);
+                }
+            }
+            try {
+                instrumentation.retransformClasses(loaded.toArray(new Class<?>[loaded.size()]));
+            } catch (UnmodifiableClassException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
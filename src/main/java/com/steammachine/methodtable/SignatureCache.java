@@ -0,0 +1,201 @@
+package com.steammachine.methodtable;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общий ограниченный кэш сигнатур методов: имя и дескриптор JVM - сигнатура в формате
+ * {@link ClassMethodTable#parseMethodDescriptor}. <p>
+ * Пары вроде {@code toString ()Ljava/lang/String;} или {@code <init> ()V} повторяются по всему
+ * classpath; при попадании в кэш сигнатура не строится заново, и все классы разделяют один
+ * экземпляр строки. Кэш - таблица фиксированного размера с прямым отображением: пара занимает
+ * ячейку по своему хэшу и вытесняет прежнюю, поэтому объем кэша ограничен, а чтение и запись
+ * не требуют блокировок. Элементы неизменяемы (final поля), так что гонка записи в ячейку
+ * безопасна - читатель видит либо прежний, либо новый элемент целиком. Хэш совпадает с
+ * {@link String#hashCode()}, поэтому для ASCII имен его можно вычислить прямо по байтам файла
+ * класса без создания строк.
+ *
+ * @author Vladimir Bogodukhov
+ */
+public final class SignatureCache {
+
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static final SignatureCache SHARED = new SignatureCache(DEFAULT_CAPACITY);
+
+    private final Entry[] entries;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity количество ячеек, округляется вверх до степени двойки
+     */
+    public SignatureCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return кэш, общий для всех разборов
+     */
+    public static SignatureCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param name       имя метода
+     * @param descriptor дескриптор метода в формате JVM
+     * @return сигнатура метода в формате {@link ClassMethodTable#parseMethodDescriptor}
+     */
+    public String signature(String name, String descriptor) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(descriptor);
+        int slot = slot(hash(name.hashCode(), descriptor.hashCode()));
+        Entry entry = entries[slot];
+        if (entry != null && entry.name.equals(name) && entry.descriptor.equals(descriptor)) {
+            hits.increment();
+            return entry.signature;
+        }
+        misses.increment();
+        String signature = ClassMethodTable.parseMethodDescriptor(name, descriptor);
+        entries[slot] = new Entry(name, descriptor, signature);
+        return signature;
+    }
+
+    /**
+     * @return количество попаданий
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return количество промахов
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return доля попаданий от 0 до 1, 0 если обращений не было
+     */
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return количество ячеек
+     */
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * очистить кэш и статистику
+     */
+    public void clear() {
+        Arrays.fill(entries, null);
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "SignatureCache{" +
+                "capacity=" + entries.length +
+                ", hits=" + hits() +
+                ", misses=" + misses() +
+                '}';
+    }
+
+    /**
+     * Поиск по байтам строк в модифицированной кодировке UTF-8 без создания строк.
+     *
+     * @return сигнатура или null, если пары нет в кэше или строки не в ASCII
+     */
+    String get(byte[] data, int nameOffset, int nameLength, int descriptorOffset,
+            int descriptorLength) {
+        long nameHash = asciiHash(data, nameOffset, nameLength);
+        long descriptorHash = asciiHash(data, descriptorOffset, descriptorLength);
+        if (nameHash < 0 || descriptorHash < 0) {
+            return null;
+        }
+        Entry entry = entries[slot(hash((int) nameHash, (int) descriptorHash))];
+        if (entry != null && asciiEquals(entry.name, data, nameOffset, nameLength)
+                && asciiEquals(entry.descriptor, data, descriptorOffset, descriptorLength)) {
+            hits.increment();
+            return entry.signature;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * запомнить сигнатуру, построенную после промаха {@link #get}
+     */
+    void put(String name, String descriptor, String signature) {
+        entries[slot(hash(name.hashCode(), descriptor.hashCode()))] =
+                new Entry(name, descriptor, signature);
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private static int hash(int nameHash, int descriptorHash) {
+        int hash = nameHash * 31 + descriptorHash;
+        return hash ^ (hash >>> 16);
+    }
+
+    private int slot(int hash) {
+        return hash & mask;
+    }
+
+    /**
+     * @return {@link String#hashCode()} строки из ASCII байт (без знака) или -1, если строка не
+     * в ASCII - хэш таких строк по байтам не совпадает с хэшем строки
+     */
+    private static long asciiHash(byte[] data, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (b <= 0) {
+                return -1;
+            }
+            hash = 31 * hash + b;
+        }
+        return hash & 0xFFFFFFFFL;
+    }
+
+    private static boolean asciiEquals(String value, byte[] data, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry {
+
+        private final String name;
+        private final String descriptor;
+        private final String signature;
+
+        private Entry(String name, String descriptor, String signature) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+        }
+    }
+}
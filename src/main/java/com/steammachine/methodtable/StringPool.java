@@ -0,0 +1,113 @@
+package com.steammachine.methodtable;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пул строк для устранения дубликатов сигнатур в индексах. <p>
+ * Одинаковые сигнатуры ({@code java.lang.String toString()}, {@code boolean equals(java.lang.Object)}
+ * и т.п.) встречаются в тысячах классов classpath; пропущенные через пул таблицы хранят один
+ * экземпляр каждой строки независимо от дедупликации строк сборщиком мусора. Строки
+ * удерживаются слабо - когда ни одна таблица больше не ссылается на строку, она удаляется из
+ * пула. Пул разбит на независимые сегменты со своей блокировкой, поэтому параллельная
+ * индексация почти не конкурирует за него.
+ *
+ * @author Vladimir Bogodukhov
+ * @see MethodPositionTable#deduplicated(StringPool)
+ */
+public final class StringPool {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private static final StringPool SHARED = new StringPool(DEFAULT_STRIPES);
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param stripes количество сегментов, округляется вверх до степени двойки
+     */
+    public StringPool(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        size = size < stripes ? size << 1 : size;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return пул, общий для всех индексов
+     */
+    public static StringPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param value строка
+     * @return экземпляр из пула, равный value; value, если такой строки в пуле не было
+     */
+    public String intern(String value) {
+        Objects.requireNonNull(value);
+        int hash = value.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & mask];
+        synchronized (stripe) {
+            WeakReference<String> reference = stripe.strings.get(value);
+            String pooled = reference != null ? reference.get() : null;
+            if (pooled != null) {
+                hits.increment();
+                return pooled;
+            }
+            stripe.strings.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    /**
+     * @return количество строк в пуле, включая строки, которые уже не используются, но еще не
+     * удалены сборщиком мусора
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.strings.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return сколько раз строка была заменена экземпляром из пула
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StringPool{" +
+                "stripes=" + stripes.length +
+                ", size=" + size() +
+                ", hits=" + hits() +
+                '}';
+    }
+
+    /* ----------------------------------------------- privates --------------------------------------------------------- */
+
+    private static final class Stripe {
+
+        /**
+         * значение - слабая ссылка на ключ, иначе ключ WeakHashMap никогда не освободится
+         */
+        private final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+    }
+}
@@ -0,0 +1,107 @@
+package com.steammachine.methodtable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassDirectoryWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path root = folder.getRoot().toPath();
+        Path existing = Files.createDirectories(root.resolve("a")).resolve("Existing.class");
+        Files.write(existing, bytes);
+
+        try (ClassDirectoryWatcher watcher = new ClassDirectoryWatcher(root, 20,
+                (source, error) -> {
+                }).start()) {
+            Assert.assertEquals(1, watcher.snapshot().size());
+            Assert.assertEquals(5, watcher.snapshot().get("a.Existing").size());
+
+            /* новый каталог с классом */
+            Path created = Files.createDirectories(root.resolve("b/c")).resolve("Created.class");
+            Files.write(created, bytes);
+            waitUntil(() -> watcher.snapshot().containsKey("b.c.Created"));
+            Assert.assertTrue(watcher.snapshot().containsKey("a.Existing"));
+
+            /* удаленный файл */
+            Files.delete(existing);
+            waitUntil(() -> !watcher.snapshot().containsKey("a.Existing"));
+
+            /* удаленный каталог */
+            Files.delete(created);
+            Files.delete(root.resolve("b/c"));
+            waitUntil(() -> watcher.snapshot().isEmpty());
+        }
+    }
+
+    @Test
+    public void testBrokenFileKeepsPreviousData() throws Exception {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path root = folder.getRoot().toPath();
+        Path file = root.resolve("Changing.class");
+        Files.write(file, bytes);
+
+        AtomicInteger errors = new AtomicInteger();
+        try (ClassDirectoryWatcher watcher = new ClassDirectoryWatcher(root, 20,
+                (source, error) -> errors.incrementAndGet()).start()) {
+            ClassDirectoryWatcher.Snapshot before = watcher.current();
+            Files.write(file, new byte[]{1, 2, 3});
+            waitUntil(() -> watcher.generation() > before.generation() && errors.get() > 0);
+            ClassDirectoryWatcher.Snapshot after = watcher.current();
+            Assert.assertTrue(after.generation() > before.generation());
+            Assert.assertEquals(5, after.classes().get("Changing").size());
+        }
+    }
+
+    @Test
+    public void testContinuousChangesArePublished() throws Exception {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path root = folder.getRoot().toPath();
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        /* пауза между событиями всегда меньше паузы ожидания - пачка ограничена только задержкой */
+        try (ClassDirectoryWatcher watcher = new ClassDirectoryWatcher(root, 1000, 100,
+                (source, error) -> {
+                }).start()) {
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; writing.get() && i < 1000; i++) {
+                        Files.write(root.resolve("Written" + i + ".class"), bytes);
+                        Thread.sleep(20);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            writer.start();
+            try {
+                waitUntil(() -> watcher.snapshot().containsKey("Written0"));
+                Assert.assertTrue(writer.isAlive());
+            } finally {
+                writing.set(false);
+                writer.join();
+            }
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("timeout");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.steammachine.methodtable;
+
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassIndexingTransformerTest {
+
+    @Test
+    public void testIndexesTransformedBytes() throws Exception {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        ClassLoader loader = ClassWithMethods.class.getClassLoader();
+        AgentPositionStore store = new AgentPositionStore();
+        ClassIndexingTransformer transformer = new ClassIndexingTransformer(store, 16).start();
+        try {
+            Assert.assertNull(transformer.transform(loader,
+                    "com/steammachine/methodtable/ClassWithMethods", null, null, bytes));
+            transformer.transform(null, "bootstrap/Broken", null, null, new byte[]{1, 2, 3});
+            waitFor(transformer, 2);
+
+            Assert.assertEquals(1, transformer.indexed());
+            Assert.assertEquals(1, transformer.failed());
+            Assert.assertEquals(1, store.size());
+            Assert.assertEquals(ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(bytes)),
+                    store.get(ClassWithMethods.class).asMap());
+            /* тот же класс в другом загрузчике не проиндексирован */
+            Assert.assertNull(store.get(null, ClassWithMethods.class.getName()));
+        } finally {
+            transformer.stop();
+        }
+    }
+
+    @Test
+    public void testDropsOnOverflow() throws Exception {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        AgentPositionStore store = new AgentPositionStore();
+        /* разбор не запущен - очередь только заполняется */
+        ClassIndexingTransformer transformer = new ClassIndexingTransformer(store, 2);
+        for (int i = 0; i < 5; i++) {
+            transformer.transform(null, "a/Class" + i, null, null, bytes);
+        }
+        transformer.transform(null, null, null, null, bytes);
+
+        Assert.assertEquals(2, transformer.pending());
+        Assert.assertEquals(3, transformer.dropped());
+        Assert.assertEquals(0, store.size());
+    }
+
+    private static void waitFor(ClassIndexingTransformer transformer, int processed)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (transformer.indexed() + transformer.failed() < processed
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
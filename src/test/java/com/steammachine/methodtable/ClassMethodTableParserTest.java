@@ -0,0 +1,108 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassMethodTableParserTest {
+
+    private static final List<Class<?>> CLASSES = Arrays.asList(
+            ClassWithMethods.class, ClassMethodTable.class, ClassView.class, String.class,
+            HashMap.class, ConcurrentHashMap.class, Thread.class, Character.class);
+
+    @Test
+    public void testSameAsStreamParser() throws IOException {
+        ClassMethodTableParser parser = new ClassMethodTableParser();
+        /* каждый класс разбирается дважды - второй разбор идет на уже выросших буферах */
+        for (int pass = 0; pass < 2; pass++) {
+            for (Class<?> type : CLASSES) {
+                byte[] bytes = ClassMethodTableTest.readResource(type);
+                Map<String, SourceCodePosition> expected =
+                        ClassMethodTable.readClassFromDataInputStream(
+                                new DataInputStream(new ByteArrayInputStream(bytes)));
+
+                Assert.assertEquals(type.getName(), expected,
+                        parser.parse(new ByteArrayInputStream(bytes)));
+                Assert.assertEquals(type.getName(), expected,
+                        parser.parse(bytes, 0, bytes.length));
+                Assert.assertEquals(type.getName(), expected, parser
+                        .parseTable(new ByteArrayInputStream(bytes), bytes.length).asMap());
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedBufferIsNotRetained() throws IOException {
+        ClassMethodTableParser parser = new ClassMethodTableParser();
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        /* данные после конца класса не читаются, но увеличивают буфер */
+        byte[] padded = Arrays.copyOf(bytes, 2 * 1024 * 1024);
+        Assert.assertEquals(parser.parse(bytes, 0, bytes.length),
+                parser.parse(padded, 0, padded.length));
+        Assert.assertTrue(parser.retainedBufferSize() <= 1024 * 1024);
+
+        Assert.assertEquals(parser.parse(bytes, 0, bytes.length),
+                parser.parse(new ByteArrayInputStream(padded)));
+        Assert.assertTrue(parser.retainedBufferSize() <= 1024 * 1024);
+    }
+
+    @Test
+    public void testParseClassSameAsView() throws IOException {
+        ClassMethodTableParser parser = new ClassMethodTableParser();
+        for (Class<?> type : CLASSES) {
+            byte[] bytes = ClassMethodTableTest.readResource(type);
+            ClassView view = ClassView.of(bytes);
+            ClassPositions positions = parser.parseClass(new ByteArrayInputStream(bytes), -1);
+
+            Assert.assertEquals(type.getName(), positions.className());
+            Assert.assertNull(positions.source());
+            Assert.assertEquals(view.positions(), positions.positions());
+            Assert.assertEquals(view.superClassName(), positions.superClassName());
+            Assert.assertEquals(view.interfaceNames(), positions.interfaceNames());
+            Assert.assertEquals(view.sourceFile(), positions.sourceFile());
+            Assert.assertEquals(view.innerClassNames(), positions.innerClassNames());
+            Assert.assertEquals(view.nestHost(), positions.nestHost());
+            Assert.assertEquals(view.nestMemberNames(), positions.nestMemberNames());
+        }
+    }
+
+    @Test
+    public void testTruncatedAfterLargerClass() throws IOException {
+        ClassMethodTableParser parser = new ClassMethodTableParser();
+        byte[] large = ClassMethodTableTest.readResource(Character.class);
+        parser.parse(large, 0, large.length);
+
+        /* остатки предыдущего класса в буфере не должны читаться */
+        byte[] small = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        try {
+            parser.parse(small, 0, small.length - 40);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("unexpected end of class data", e.getMessage());
+        }
+        Assert.assertEquals(ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(small)),
+                parser.parse(small, 0, small.length));
+    }
+
+    @Test
+    public void testForCurrentThread() throws Exception {
+        ClassMethodTableParser parser = ClassMethodTableParser.forCurrentThread();
+        Assert.assertSame(parser, ClassMethodTableParser.forCurrentThread());
+
+        ClassMethodTableParser[] other = new ClassMethodTableParser[1];
+        Thread thread = new Thread(() -> other[0] = ClassMethodTableParser.forCurrentThread());
+        thread.start();
+        thread.join();
+        Assert.assertNotNull(other[0]);
+        Assert.assertNotSame(parser, other[0]);
+    }
+}
@@ -1,12 +1,23 @@
 package com.steammachine.methodtable;
 
 import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class ClassMethodTableTest {
@@ -31,6 +42,193 @@ public class ClassMethodTableTest {
     }
 
 
+    @Test
+    public void testReadClassFromByteBuffer() throws IOException {
+        Path path = getClassCodePath(ClassWithMethods.class);
+        Map<String, SourceCodePosition> expected;
+        try (InputStream stream = Files.newInputStream(path)) {
+            expected = ClassMethodTable.readClassFromInputStream(stream);
+        }
+
+        byte[] bytes = Files.readAllBytes(path);
+        Assert.assertEquals(expected, ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(bytes)));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+        direct.put(new byte[3]).put(bytes).position(3);
+        Assert.assertEquals(expected, ClassMethodTable.readClassFromByteBuffer(direct));
+        Assert.assertEquals(3, direct.position());
+
+        Assert.assertEquals(expected, ClassMethodTable.readClassFromPath(path));
+    }
+
+    @Test
+    public void testReadClassFromByteBufferPositions() throws IOException {
+        Map<String, SourceCodePosition> positions = ClassMethodTable.readClassFromPath(
+                getClassCodePath(ClassWithMethods.class));
+
+        SourceCodePosition method1 = positions.get("void method1()");
+        SourceCodePosition method2 = positions.get("void method2()");
+        Assert.assertTrue(method1.hasPosition());
+        Assert.assertTrue(method1.minLineNumber() < method2.minLineNumber());
+        Assert.assertTrue(method1.order() < method2.order());
+    }
+
+    @Test
+    public void testReadClassFromByteBufferMatchesStream() throws IOException {
+        for (Class<?> clazz : new Class<?>[]{String.class, Map.class, ClassMethodTable.class}) {
+            byte[] bytes = readResource(clazz);
+            Assert.assertEquals(clazz.getName(),
+                    ClassMethodTable.readClassFromInputStream(new ByteArrayInputStream(bytes)),
+                    ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(bytes)));
+        }
+    }
+
+    @Test
+    public void testTruncatedByteBuffer() throws IOException {
+        byte[] bytes = readResource(ClassWithMethods.class);
+        for (int length : new int[]{0, 3, 9, bytes.length / 2, bytes.length - 40}) {
+            ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, length);
+            try {
+                ClassMethodTable.readClassFromByteBuffer(truncated);
+                Assert.fail("length " + length);
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("unexpected end of class data", e.getMessage());
+            }
+            try {
+                ClassView.of(truncated).positions();
+                Assert.fail("length " + length);
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("unexpected end of class data", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeUTF() throws IOException {
+        for (String value : new String[]{"", "Code", "ascii/Name;", "метод\u0000\u20ac", "a\uffffb"}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new DataOutputStream(out).writeUTF(value);
+            byte[] bytes = out.toByteArray();
+
+            Assert.assertEquals(value, ClassMethodTable.decodeUTF(bytes, 2, bytes.length - 2));
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes);
+            Assert.assertEquals(value, ClassMethodTable.decodeUTF(direct, 2, bytes.length - 2));
+        }
+    }
+
+    @Test
+    public void testPositionsOf() throws IOException, NoSuchMethodException {
+        Map<String, SourceCodePosition> positions = ClassMethodTable.positionsOf(ClassWithMethods.class);
+        Assert.assertEquals(ClassMethodTable.readClassFromPath(getClassCodePath(ClassWithMethods.class)),
+                positions);
+        Assert.assertSame(positions, ClassMethodTable.positionsOf(ClassWithMethods.class));
+
+        Method method2 = ClassWithMethods.class.getDeclaredMethod("method2");
+        Assert.assertEquals(positions.get("void method2()"), ClassMethodTable.positionOf(method2));
+
+        Method length = String.class.getMethod("length");
+        Assert.assertTrue(ClassMethodTable.positionOf(length).hasPosition());
+
+        Assert.assertTrue(ClassMethodTable.positionsOf(int[].class).isEmpty());
+        Assert.assertFalse(ClassMethodTable.positionOf(
+                Runnable.class.getMethod("run")).hasPosition());
+    }
+
+    @Test
+    public void testMethodDescriptor() throws NoSuchMethodException {
+        Assert.assertEquals("()V",
+                ClassMethodTable.methodDescriptor(ClassWithMethods.class.getDeclaredMethod("method1")));
+        Assert.assertEquals("(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/String;",
+                ClassMethodTable.methodDescriptor(String.class.getMethod("replace",
+                        CharSequence.class, CharSequence.class)));
+        Assert.assertEquals("([CII)Ljava/lang/String;",
+                ClassMethodTable.methodDescriptor(String.class.getMethod("valueOf",
+                        char[].class, int.class, int.class)));
+        Assert.assertEquals("(JZBSFD[[Ljava/lang/Object;)V",
+                ClassMethodTable.methodDescriptor(Descriptors.class.getDeclaredMethod("all",
+                        long.class, boolean.class, byte.class, short.class, float.class,
+                        double.class, Object[][].class)));
+    }
+
+    @Test
+    public void testPositionOfDescriptor() throws NoSuchMethodException {
+        SourceCodePosition method3 = ClassMethodTable.positionOf(ClassWithMethods.class,
+                "method3", "()V");
+        Assert.assertTrue(method3.hasPosition());
+        Assert.assertEquals(ClassMethodTable.positionsOf(ClassWithMethods.class).get("void method3()"),
+                method3);
+        Assert.assertSame(method3, ClassMethodTable.positionOf(
+                ClassWithMethods.class.getDeclaredMethod("method3")));
+        Assert.assertFalse(ClassMethodTable.positionOf(ClassWithMethods.class, "method3", "()I")
+                .hasPosition());
+    }
+
+    @Test
+    public void testVisitClass() throws IOException {
+        byte[] bytes = readResource(ClassWithMethods.class);
+        Map<String, SourceCodePosition> expected = ClassMethodTable.positionsOf(ClassWithMethods.class);
+
+        Map<String, SourceCodePosition> visited = new HashMap<>();
+        Assert.assertTrue(ClassMethodTable.visitClass(new ByteArrayInputStream(bytes),
+                (name, descriptor, accessFlags, position) -> {
+                    visited.put(ClassMethodTable.parseMethodDescriptor(name, descriptor), position);
+                    return true;
+                }));
+        Assert.assertEquals(expected, visited);
+
+        visited.clear();
+        Assert.assertTrue(ClassMethodTable.visitClass(ByteBuffer.wrap(bytes),
+                (name, descriptor, accessFlags, position) -> {
+                    visited.put(ClassMethodTable.parseMethodDescriptor(name, descriptor), position);
+                    return true;
+                }));
+        Assert.assertEquals(expected, visited);
+    }
+
+    @Test
+    public void testVisitClassStops() throws IOException {
+        byte[] bytes = readResource(ClassWithMethods.class);
+        List<String> names = new ArrayList<>();
+        MethodPositionVisitor visitor = (name, descriptor, accessFlags, position) -> {
+            names.add(name);
+            return !"method2".equals(name);
+        };
+
+        Assert.assertFalse(ClassMethodTable.visitClass(new ByteArrayInputStream(bytes), visitor));
+        Assert.assertEquals("method2", names.get(names.size() - 1));
+        int visitedCount = names.size();
+        Assert.assertTrue(visitedCount < ClassMethodTable.positionsOf(ClassWithMethods.class).size());
+
+        names.clear();
+        Assert.assertFalse(ClassMethodTable.visitClass(ByteBuffer.wrap(bytes), visitor));
+        Assert.assertEquals(visitedCount, names.size());
+    }
+
+    @SuppressWarnings("unused")
+    private interface Descriptors {
+
+        void all(long l, boolean z, byte b, short s, float f, double d, Object[][] array);
+    }
+
+    static byte[] readResource(Class<?> clazz) throws IOException {
+        try (InputStream stream = clazz.getResourceAsStream(
+                "/" + clazz.getName().replace('.', '/') + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static Path getClassCodePath(Class<?> clazz) {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().getFile(),
+                clazz.getName().replace(".", "/") + ".class").toPath();
+    }
+
     private static InputStream getClassCodeStream(Class<?> clazz) throws FileNotFoundException {
         if (clazz.getProtectionDomain() == null) {
             return null;
@@ -0,0 +1,196 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassScanPublisher.Subscriber;
+import com.steammachine.methodtable.ClassScanPublisher.Subscription;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassScanPublisherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testScanOneByOne() throws Exception {
+        byte[] classWithMethods = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path jar = folder.newFile("test.jar").toPath();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putEntry(out, "com/steammachine/methodtable/ClassWithMethods.class", classWithMethods);
+            putEntry(out, "broken/Broken.class", new byte[]{1, 2, 3});
+            putEntry(out, "readme.txt", new byte[]{1, 2, 3});
+        }
+        Path directory = classes("classes", 5);
+
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        new ClassScanPublisher(Arrays.asList(jar, directory, directory.resolve("missing.jar")),
+                executor, 2, (source, error) -> errors.add(source)).subscribe(subscriber);
+
+        Assert.assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        Set<String> names = new HashSet<>();
+        for (ClassPositions item : subscriber.items) {
+            names.add(item.className());
+        }
+        Assert.assertEquals(6, subscriber.items.size());
+        Assert.assertTrue(names.contains(ClassWithMethods.class.getName()));
+        Assert.assertTrue(names.contains("sample.Sample4"));
+        for (ClassPositions item : subscriber.items) {
+            if (item.className().equals(ClassWithMethods.class.getName())) {
+                Assert.assertEquals(jar + "!/com/steammachine/methodtable/ClassWithMethods.class",
+                        item.source());
+                Assert.assertEquals("ClassWithMethods.java", item.sourceFile());
+                Assert.assertEquals("java.lang.Object", item.superClassName());
+                Assert.assertEquals(ClassMethodTable.readClassFromInputStream(
+                        new ByteArrayInputStream(classWithMethods)), item.positions());
+            }
+        }
+        Assert.assertEquals(Arrays.asList(jar + "!/broken/Broken.class",
+                directory.resolve("missing.jar").toString()), errors);
+        Assert.assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testDemandLimitsParsing() throws Exception {
+        Path directory = classes("many", 20);
+        AtomicInteger started = new AtomicInteger();
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        new ClassScanPublisher(Collections.singletonList(directory), task -> {
+            started.incrementAndGet();
+            executor.execute(task);
+        }, 8, (source, error) -> Assert.fail(source)).subscribe(subscriber);
+
+        subscriber.subscription.request(3);
+        waitFor(subscriber, 3);
+        Thread.sleep(100);
+        Assert.assertEquals(3, subscriber.items.size());
+        Assert.assertEquals(3, started.get());
+        Assert.assertEquals(1, subscriber.completed.getCount());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assert.assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(20, subscriber.items.size());
+        Assert.assertEquals(20, started.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Path directory = classes("cancelled", 20);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        new ClassScanPublisher(Collections.singletonList(directory)).subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        waitFor(subscriber, 2);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        Thread.sleep(100);
+        Assert.assertEquals(2, subscriber.items.size());
+        Assert.assertEquals(1, subscriber.completed.getCount());
+    }
+
+    @Test
+    public void testNonPositiveRequest() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        new ClassScanPublisher(Collections.singletonList(classes("empty", 1)))
+                .subscribe(subscriber);
+        subscriber.subscription.request(0);
+        Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+        Assert.assertTrue(subscriber.items.isEmpty());
+    }
+
+    /**
+     * каталог с копиями ClassWithMethods под именами sample.Sample0 ... - имя класса берется из
+     * пути, содержимое файла не проверяется
+     */
+    private Path classes(String name, int count) throws IOException {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path directory = folder.newFolder(name).toPath();
+        Files.createDirectories(directory.resolve("sample"));
+        for (int i = 0; i < count; i++) {
+            Files.write(directory.resolve("sample/Sample" + i + ".class"), bytes);
+        }
+        return directory;
+    }
+
+    private static void waitFor(RecordingSubscriber subscriber, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (subscriber.items.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+
+    /**
+     * запрашивает по одному классу после каждого полученного, если batch > 0
+     */
+    private static class RecordingSubscriber implements Subscriber<ClassPositions> {
+
+        private final int batch;
+        private final List<ClassPositions> items = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Subscription subscription;
+        private volatile Throwable error;
+
+        private RecordingSubscriber(int batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (batch > 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onNext(ClassPositions item) {
+            items.add(item);
+            if (batch > 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
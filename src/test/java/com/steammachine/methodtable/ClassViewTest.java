@@ -0,0 +1,120 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class ClassViewTest {
+
+    @Test
+    public void testMethods() throws IOException {
+        ClassView view = ClassView.of(ClassMethodTableTest.readResource(ClassWithMethods.class));
+
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < view.methodCount(); i++) {
+            indexes.put(view.methodName(i), i);
+        }
+        Assert.assertTrue(indexes.containsKey("<init>"));
+
+        int method1 = indexes.get("method1");
+        Assert.assertEquals("()V", view.methodDescriptor(method1));
+        Assert.assertEquals("void method1()", view.methodSignature(method1));
+        Assert.assertTrue(Modifier.isPrivate(view.methodAccessFlags(method1)));
+
+        SourceCodePosition position = view.position(method1);
+        Assert.assertTrue(position.hasPosition());
+        Assert.assertEquals(method1, position.order());
+        Assert.assertTrue(position.minLineNumber() < view.position(indexes.get("method2")).minLineNumber());
+    }
+
+    @Test
+    public void testClassMetadata() throws IOException {
+        ClassPositions hashMap = ClassView.of(ClassMethodTableTest.readResource(HashMap.class))
+                .classPositions();
+        Assert.assertEquals("java.util.HashMap", hashMap.className());
+        Assert.assertNull(hashMap.source());
+        Assert.assertEquals("java.util.AbstractMap", hashMap.superClassName());
+        Assert.assertEquals(Arrays.asList("java.util.Map", "java.lang.Cloneable",
+                "java.io.Serializable"), hashMap.interfaceNames());
+        Assert.assertEquals("HashMap.java", hashMap.sourceFile());
+        Assert.assertTrue(hashMap.innerClassNames().contains("java.util.HashMap$Node"));
+        Assert.assertFalse(hashMap.innerClassNames().contains("java.util.Map$Entry"));
+        Assert.assertEquals(ClassMethodTable.positionsOf(HashMap.class), hashMap.positions());
+
+        ClassView object = ClassView.of(ClassMethodTableTest.readResource(Object.class));
+        Assert.assertNull(object.superClassName());
+        Assert.assertTrue(object.interfaceNames().isEmpty());
+
+        Object anonymous = new Object() {
+        };
+        ClassView test = ClassView.of(ClassMethodTableTest.readResource(ClassViewTest.class));
+        Assert.assertEquals(Collections.singletonList(anonymous.getClass().getName()),
+                test.innerClassNames());
+        Assert.assertEquals("ClassViewTest.java", test.sourceFile());
+    }
+
+    @Test
+    public void testNestMembers() throws Exception {
+        Method getNestMembers;
+        try {
+            getNestMembers = Class.class.getMethod("getNestMembers");
+        } catch (NoSuchMethodException e) {
+            Assume.assumeNoException("no nests before Java 11", e);
+            return;
+        }
+        ClassView view = ClassView.of(ClassMethodTableTest.readResource(HashMap.class));
+        Set<String> expected = new HashSet<>();
+        for (Class<?> member : (Class<?>[]) getNestMembers.invoke(HashMap.class)) {
+            expected.add(member.getName());
+        }
+        expected.remove(HashMap.class.getName());
+        Assert.assertEquals(expected, new HashSet<>(view.nestMemberNames()));
+        Assert.assertNull(view.nestHost());
+
+        ClassView node = ClassView.of(
+                ClassMethodTableTest.readResource(Class.forName("java.util.HashMap$Node")));
+        Assert.assertEquals("java.util.HashMap", node.nestHost());
+        Assert.assertTrue(node.nestMemberNames().isEmpty());
+    }
+
+    @Test
+    public void testPositionsMatchStream() throws IOException {
+        for (Class<?> clazz : new Class<?>[]{ClassWithMethods.class, String.class, HashMap.class}) {
+            byte[] bytes = ClassMethodTableTest.readResource(clazz);
+            Assert.assertEquals(clazz.getName(),
+                    ClassMethodTable.readClassFromInputStream(new ByteArrayInputStream(bytes)),
+                    ClassView.of(bytes).positions());
+        }
+    }
+
+    @Test
+    public void testIndexOf() throws IOException {
+        ClassView view = ClassView.of(ClassMethodTableTest.readResource(String.class));
+        int index = view.indexOf("indexOf", "(Ljava/lang/String;)I");
+        Assert.assertEquals("int indexOf(java.lang.String)", view.methodSignature(index));
+        Assert.assertEquals(-1, view.indexOf("indexOf", "(Ljava/lang/String;)J"));
+        Assert.assertEquals(-1, view.indexOf("indexOf\u0416", "(Ljava/lang/String;)I"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotAClass() {
+        ClassView.of(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIllegalMethodIndex() throws IOException {
+        ClassView view = ClassView.of(ClassMethodTableTest.readResource(ClassWithMethods.class));
+        view.methodName(view.methodCount());
+    }
+}
@@ -0,0 +1,134 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClasspathIndexerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndexJarAndDirectory() throws IOException {
+        byte[] classWithMethods = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        byte[] string = ClassMethodTableTest.readResource(String.class);
+
+        Path jar = folder.newFile("test.jar").toPath();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putEntry(out, "com/steammachine/methodtable/ClassWithMethods.class", classWithMethods);
+            putEntry(out, "broken/Broken.class", new byte[]{1, 2, 3});
+            putEntry(out, "META-INF/versions/9/Ignored.class", new byte[]{1, 2, 3});
+            putEntry(out, "readme.txt", new byte[]{1, 2, 3});
+        }
+
+        Path directory = folder.newFolder("classes").toPath();
+        Files.createDirectories(directory.resolve("java/lang"));
+        Files.write(directory.resolve("java/lang/String.class"), string);
+
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Map<String, Map<String, SourceCodePosition>> index =
+                    new ClasspathIndexer(executor, (source, error) -> errors.add(source))
+                            .index(Arrays.asList(jar, directory, directory.resolve("missing.jar")));
+
+            Assert.assertEquals(2, index.size());
+            Assert.assertEquals(ClassMethodTable.readClassFromInputStream(
+                    new ByteArrayInputStream(classWithMethods)),
+                    index.get(ClassWithMethods.class.getName()));
+            Assert.assertEquals(ClassMethodTable.readClassFromInputStream(
+                    new ByteArrayInputStream(string)),
+                    index.get(String.class.getName()));
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(2, errors.size());
+        Assert.assertTrue(errors.contains(jar + "!/broken/Broken.class"));
+        Assert.assertTrue(errors.contains(directory.resolve("missing.jar").toString()));
+    }
+
+    @Test
+    public void testFirstClasspathElementWins() throws IOException {
+        Path first = folder.newFolder("first").toPath();
+        Path second = folder.newFolder("second").toPath();
+        Files.write(first.resolve("Sample.class"),
+                ClassMethodTableTest.readResource(ClassWithMethods.class));
+        Files.write(second.resolve("Sample.class"), ClassMethodTableTest.readResource(String.class));
+
+        Map<String, Map<String, SourceCodePosition>> index =
+                new ClasspathIndexer().index(Arrays.asList(first, second));
+
+        Assert.assertTrue(index.get("Sample").containsKey("void method1()"));
+    }
+
+    @Test
+    public void testIndexJmods() throws IOException {
+        byte[] classWithMethods = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path jmods = folder.newFolder("jmods").toPath();
+        writeJmod(jmods.resolve("sample.module.jmod"), classWithMethods);
+        writeJmod(jmods.resolve("skipped.module.jmod"), classWithMethods);
+
+        Map<String, Map<String, SourceCodePosition>> index = new ClasspathIndexer()
+                .indexJmods(jmods, "sample.module"::equals);
+
+        Assert.assertEquals(Collections.singleton(ClassWithMethods.class.getName()),
+                index.keySet());
+        Assert.assertEquals(ClassMethodTable.readClassFromInputStream(
+                new ByteArrayInputStream(classWithMethods)),
+                index.get(ClassWithMethods.class.getName()));
+    }
+
+    @Test
+    public void testIndexRuntimeImage() {
+        Assume.assumeTrue("no jrt:/ before Java 9",
+                ClassLoader.getSystemResource("java/lang/Object.class").getProtocol()
+                        .equals("jrt"));
+        Map<String, Map<String, SourceCodePosition>> index = new ClasspathIndexer()
+                .indexRuntimeImage("java.logging"::equals);
+
+        Assert.assertTrue(index.containsKey("java.util.logging.Logger"));
+        Assert.assertFalse(index.containsKey("java.lang.String"));
+        Assert.assertEquals(ClassMethodTable.positionsOf(java.util.logging.Logger.class),
+                index.get("java.util.logging.Logger"));
+    }
+
+    /**
+     * jmod - zip архив с заголовком "JM" 1 0 и классами в каталоге classes/
+     */
+    private static void writeJmod(Path jmod, byte[] classWithMethods) throws IOException {
+        try (OutputStream file = Files.newOutputStream(jmod)) {
+            file.write(new byte[]{'J', 'M', 1, 0});
+            ZipOutputStream out = new ZipOutputStream(file);
+            putEntry(out, "classes/module-info.class", new byte[]{1, 2, 3});
+            putEntry(out, "classes/com/steammachine/methodtable/ClassWithMethods.class",
+                    classWithMethods);
+            putEntry(out, "lib/libsample.so", new byte[]{1, 2, 3});
+            out.finish();
+        }
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,134 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.DefaultSourceCodePosition;
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressedPositionIndexTest {
+
+    @Test
+    public void testSameAsSource() throws IOException {
+        Map<String, Map<String, SourceCodePosition>> classes = new HashMap<>();
+        for (Class<?> type : new Class<?>[]{String.class, HashMap.class, ClassWithMethods.class,
+                ClassMethodTable.class, Runnable.class}) {
+            classes.put(type.getName(), ClassMethodTable.readClassFromInputStream(
+                    new ByteArrayInputStream(ClassMethodTableTest.readResource(type))));
+        }
+        CompressedPositionIndex index = CompressedPositionIndex.of(classes);
+
+        int methods = 0;
+        for (Map.Entry<String, Map<String, SourceCodePosition>> entry : classes.entrySet()) {
+            String className = entry.getKey();
+            Assert.assertTrue(index.contains(className));
+            Assert.assertEquals(entry.getValue(), index.positions(className));
+            for (Map.Entry<String, SourceCodePosition> method : entry.getValue().entrySet()) {
+                Assert.assertEquals(method.getValue(),
+                        index.position(className, method.getKey()));
+            }
+            methods += entry.getValue().size();
+        }
+        Assert.assertEquals(methods, index.size());
+        Assert.assertEquals(classes.size(), index.classCount());
+        Assert.assertTrue(methods > 10 * CompressedPositionIndex.BLOCK_SIZE);
+
+        Assert.assertNull(index.position(String.class.getName(), "int missing()"));
+        Assert.assertNull(index.position("java.lang.Strin", "int length()"));
+        Assert.assertNull(index.position("java.lang.StringX", "int length()"));
+        Assert.assertNull(index.position(String.class.getName(), "int length"));
+        Assert.assertNull(index.position(String.class.getName(), "int length()X"));
+        Assert.assertNull(index.position("a", "void a()"));
+        Assert.assertNull(index.position("z", "void a()"));
+        Assert.assertFalse(index.contains("java.lang.Strin"));
+        Assert.assertFalse(index.contains("java.lang"));
+        Assert.assertNull(index.positions("zzz"));
+    }
+
+    @Test
+    public void testPositions() {
+        Map<String, SourceCodePosition> positions = new HashMap<>();
+        positions.put("void a()", new DefaultSourceCodePosition(10, 0));
+        positions.put("void b()", new DefaultSourceCodePosition(-1, 1, false));
+        CompressedPositionIndex index = new CompressedPositionIndex.Builder()
+                .add("sample.Sample", positions)
+                .add("sample.Sample", Collections.emptyMap())
+                .add("sample.Empty", Collections.emptyMap())
+                .build();
+
+        int a = index.indexOf("sample.Sample", "void a()");
+        Assert.assertTrue(index.hasPosition(a));
+        Assert.assertEquals(10, index.minLineNumber(a));
+        Assert.assertEquals(0, index.order(a));
+        int b = index.indexOf("sample.Sample", "void b()");
+        Assert.assertFalse(index.hasPosition(b));
+        Assert.assertEquals(1, index.order(b));
+
+        /* класс без методов есть в индексе, но методов у него нет */
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(2, index.classCount());
+        Assert.assertTrue(index.contains("sample.Empty"));
+        Assert.assertEquals(Collections.emptyMap(), index.positions("sample.Empty"));
+        Assert.assertTrue(index.indexOf("sample.Empty", "") < 0);
+    }
+
+    @Test
+    public void testNonAsciiKeys() {
+        StringBuilder longName = new StringBuilder("sample.");
+        for (int i = 0; i < 10_000; i++) {
+            longName.append('\u0416');
+        }
+        Map<String, SourceCodePosition> positions = new HashMap<>();
+        positions.put("void \u0436()", new DefaultSourceCodePosition(1, 0));
+        positions.put("void \u0000\u00e9()", new DefaultSourceCodePosition(2, 1));
+        positions.put("void \u20ac()", new DefaultSourceCodePosition(3, 2));
+        CompressedPositionIndex index = new CompressedPositionIndex.Builder()
+                .add("sample.\u041a\u043b\u0430\u0441\u0441", positions)
+                .add(longName.toString(), positions)
+                .build();
+
+        for (String className : new String[]{"sample.\u041a\u043b\u0430\u0441\u0441",
+                longName.toString()}) {
+            for (Map.Entry<String, SourceCodePosition> method : positions.entrySet()) {
+                Assert.assertEquals(method.getValue(),
+                        index.position(className, method.getKey()));
+            }
+            Assert.assertNull(index.position(className, "void \u0437()"));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        CompressedPositionIndex index = CompressedPositionIndex.of(Collections.emptyMap());
+        Assert.assertEquals(0, index.size());
+        Assert.assertFalse(index.contains("sample.Sample"));
+        Assert.assertNull(index.position("sample.Sample", "void a()"));
+        Assert.assertNull(index.positions("sample.Sample"));
+    }
+
+    @Test
+    public void testCompression() {
+        Map<String, Map<String, SourceCodePosition>> classes = new HashMap<>();
+        long plain = 0;
+        for (int i = 0; i < 200; i++) {
+            String className = "com.example.service.impl.GeneratedService" + i;
+            Map<String, SourceCodePosition> positions = new HashMap<>();
+            for (int j = 0; j < 50; j++) {
+                String signature = "java.util.List handleRequest" + j + "(java.lang.String, int)";
+                positions.put(signature, new DefaultSourceCodePosition(j * 3, j));
+                plain += className.length() + signature.length();
+            }
+            classes.put(className, positions);
+        }
+        CompressedPositionIndex index = CompressedPositionIndex.of(classes);
+        Assert.assertEquals(10_000, index.size());
+        Assert.assertTrue(index.sizeInBytes() < plain / 2);
+        Assert.assertEquals(new DefaultSourceCodePosition(21, 7), index.position(
+                "com.example.service.impl.GeneratedService42",
+                "java.util.List handleRequest7(java.lang.String, int)"));
+    }
+}
@@ -0,0 +1,200 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.HierarchyOrder.OrderedMethod;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HierarchyOrderTest {
+
+    @Test
+    public void testSuperclassMethodsFirst() {
+        List<OrderedMethod> methods = HierarchyOrder.of(getClass().getClassLoader())
+                .methods(Leaf.class.getName());
+
+        Assert.assertEquals(Arrays.asList("void zeta()", "void alpha()", "void helper()",
+                "void middle()", "void helper()", "java.lang.Comparable leaf()",
+                "int compareTo(java.lang.String)"), signatures(methods));
+        Assert.assertEquals(Base.class.getName(), methods.get(0).className());
+        /* переопределенный alpha() остается на месте метода Base, но относится к Leaf */
+        Assert.assertEquals(Leaf.class.getName(), methods.get(1).className());
+        Assert.assertEquals(Base.class.getName(), methods.get(2).className());
+        Assert.assertTrue(methods.get(0).position().minLineNumber()
+                < methods.get(2).position().minLineNumber());
+    }
+
+    @Test
+    public void testPrivateMethodsAreNotOverridden() {
+        List<OrderedMethod> methods = HierarchyOrder.of(getClass().getClassLoader())
+                .methods(Middle.class.getName());
+        Assert.assertEquals(Arrays.asList("void zeta()", "void alpha()", "void helper()",
+                "void middle()", "void helper()"), signatures(methods));
+        Assert.assertEquals(Middle.class.getName(), methods.get(4).className());
+    }
+
+    @Test
+    public void testCovariantOverride() {
+        List<OrderedMethod> methods = HierarchyOrder.of(getClass().getClassLoader())
+                .methods(CovariantLeaf.class.getName());
+        Assert.assertEquals(Arrays.asList("java.lang.String value()", "void after()"),
+                signatures(methods));
+        Assert.assertEquals(CovariantLeaf.class.getName(), methods.get(0).className());
+    }
+
+    @Test
+    public void testSuperclassesResolvedOnce() throws Exception {
+        Map<String, AtomicInteger> opened = new ConcurrentHashMap<>();
+        ClassLoader loader = getClass().getClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            HierarchyOrder order = new HierarchyOrder(className -> {
+                opened.computeIfAbsent(className, key -> new AtomicInteger()).incrementAndGet();
+                return loader.getResourceAsStream(className.replace('.', '/') + ".class");
+            }, executor);
+
+            Map<String, List<OrderedMethod>> result = order.methods(Arrays.asList(
+                    Leaf.class.getName(), Middle.class.getName(), OtherLeaf.class.getName(),
+                    Base.class.getName()));
+
+            Assert.assertEquals(Arrays.asList(Leaf.class.getName(), Middle.class.getName(),
+                    OtherLeaf.class.getName(), Base.class.getName()),
+                    new ArrayList<>(result.keySet()));
+            Assert.assertEquals(signatures(order.methods(Base.class.getName())),
+                    signatures(result.get(Base.class.getName())));
+            Assert.assertEquals(Arrays.asList("void zeta()", "void alpha()", "void helper()",
+                    "void other()"), signatures(result.get(OtherLeaf.class.getName())));
+            Assert.assertEquals(4, order.resolvedClasses());
+            for (AtomicInteger count : opened.values()) {
+                Assert.assertEquals(1, count.get());
+            }
+            Assert.assertEquals(4, opened.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingClass() {
+        Assert.assertTrue(HierarchyOrder.of(getClass().getClassLoader())
+                .methods("com.steammachine.methodtable.Missing").isEmpty());
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testReadError() {
+        new HierarchyOrder(className -> {
+            throw new IOException("unavailable");
+        }, Runnable::run).methods(Leaf.class.getName());
+    }
+
+    @Test
+    public void testReadErrorIsNotRemembered() {
+        ClassLoader loader = getClass().getClassLoader();
+        AtomicInteger failures = new AtomicInteger(1);
+        HierarchyOrder order = new HierarchyOrder(className -> {
+            if (className.equals(Base.class.getName()) && failures.getAndDecrement() > 0) {
+                throw new IOException("unavailable");
+            }
+            return loader.getResourceAsStream(className.replace('.', '/') + ".class");
+        }, Runnable::run);
+
+        try {
+            order.methods(Middle.class.getName());
+            Assert.fail();
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals(0, order.resolvedClasses());
+        }
+        Assert.assertEquals(5, order.methods(Middle.class.getName()).size());
+    }
+
+    @Test
+    public void testCyclicHierarchy() {
+        ClassLoader loader = getClass().getClassLoader();
+        /* файл Middle под именем Base: суперкласс Base указывает на сам Base */
+        HierarchyOrder order = new HierarchyOrder(className -> loader.getResourceAsStream(
+                Middle.class.getName().replace('.', '/') + ".class"), Runnable::run);
+        try {
+            order.methods(Base.class.getName());
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("cyclic inheritance"));
+        }
+    }
+
+    private static List<String> signatures(List<OrderedMethod> methods) {
+        List<String> result = new ArrayList<>();
+        for (OrderedMethod method : methods) {
+            result.add(method.signature());
+        }
+        return result;
+    }
+
+    public static class Base {
+
+        public void zeta() {
+        }
+
+        public void alpha() {
+        }
+
+        private void helper() {
+        }
+    }
+
+    public static class Middle extends Base {
+
+        public void middle() {
+        }
+
+        private void helper() {
+        }
+    }
+
+    public static class Leaf extends Middle implements Comparable<String> {
+
+        public Comparable<?> leaf() {
+            return (Comparable<String>) other -> 0;
+        }
+
+        @Override
+        public void alpha() {
+        }
+
+        @Override
+        public int compareTo(String other) {
+            return 0;
+        }
+    }
+
+    public static class OtherLeaf extends Base {
+
+        public void other() {
+        }
+    }
+
+    public static class CovariantBase {
+
+        public Object value() {
+            return null;
+        }
+    }
+
+    public static class CovariantLeaf extends CovariantBase {
+
+        @Override
+        public String value() {
+            return null;
+        }
+
+        public void after() {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.steammachine.methodtable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineMethodIndexTest {
+
+    @Test
+    public void testNestedIntervals() {
+        /* метод 10-30 с лямбдой 15-18 внутри, отдельный метод 40-50 */
+        LineMethodIndex index = new LineMethodIndex(
+                new String[]{"void outer()", "void lambda$outer$0()", "void other()"},
+                new int[]{10, 15, 40},
+                new int[]{30, 18, 50});
+
+        Assert.assertEquals(3, index.size());
+        Assert.assertEquals("void outer()", index.signature(0));
+        Assert.assertEquals("void outer()", index.methodAt(10));
+        Assert.assertEquals("void lambda$outer$0()", index.methodAt(15));
+        Assert.assertEquals("void lambda$outer$0()", index.methodAt(18));
+        Assert.assertEquals("void outer()", index.methodAt(19));
+        Assert.assertEquals("void outer()", index.methodAt(30));
+        Assert.assertNull(index.methodAt(9));
+        Assert.assertNull(index.methodAt(35));
+        Assert.assertEquals("void other()", index.methodAt(45));
+        Assert.assertNull(index.methodAt(51));
+
+        Assert.assertEquals(Arrays.asList("void outer()", "void lambda$outer$0()"),
+                index.methodsIn(17, 35));
+        Assert.assertEquals(Arrays.asList("void outer()", "void other()"),
+                index.methodsIn(20, 40));
+        Assert.assertEquals(Collections.emptyList(), index.methodsIn(31, 39));
+        Assert.assertEquals(Collections.emptyList(), index.methodsIn(40, 39));
+    }
+
+    @Test
+    public void testEqualStarts() {
+        /* при равном начале внешний интервал идет первым независимо от порядка в файле */
+        LineMethodIndex index = new LineMethodIndex(
+                new String[]{"void inner()", "void outer()", "void last()"},
+                new int[]{10, 10, 5},
+                new int[]{12, 30, 65535});
+
+        Assert.assertEquals("void last()", index.signature(0));
+        Assert.assertEquals("void outer()", index.signature(1));
+        Assert.assertEquals("void inner()", index.signature(2));
+        Assert.assertEquals("void inner()", index.methodAt(11));
+        Assert.assertEquals("void outer()", index.methodAt(13));
+        Assert.assertEquals("void last()", index.methodAt(40));
+    }
+
+    @Test
+    public void testEmpty() {
+        LineMethodIndex index = new LineMethodIndex(new String[0], new int[0], new int[0]);
+        Assert.assertEquals(-1, index.indexAt(1));
+        Assert.assertEquals(0, index.indexesIn(0, 100).length);
+    }
+
+    @Test
+    public void testClassView() throws IOException {
+        ClassView view = ClassView.of(ClassMethodTableTest.readResource(ClassWithMethods.class));
+        LineMethodIndex index = LineMethodIndex.of(view);
+        LineTable method2 = view.lineTable(view.indexOf("method2", "()V"));
+
+        Assert.assertEquals("void method2()", index.methodAt(method2.minLineNumber()));
+        Assert.assertEquals("void method2()", index.methodAt(method2.maxLineNumber()));
+        Assert.assertNull(index.methodAt(method2.maxLineNumber() + 1));
+        Assert.assertEquals(Arrays.asList("void method1()", "void method2()", "void method3()"),
+                index.methodsIn(method2.minLineNumber() - 3, method2.maxLineNumber() + 3));
+    }
+}
@@ -0,0 +1,62 @@
+package com.steammachine.methodtable;
+
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineTableTest {
+
+    @Test
+    public void testLineAt() {
+        int[] entries = {
+                entry(10, 21),
+                entry(0, 20),
+                entry(40000, 25),
+                entry(4, 22),
+        };
+        LineTable table = LineTable.of(entries, entries.length);
+
+        Assert.assertEquals(4, table.size());
+        Assert.assertEquals(0, table.startPc(0));
+        Assert.assertEquals(40000, table.startPc(3));
+        Assert.assertEquals(20, table.minLineNumber());
+        Assert.assertEquals(25, table.maxLineNumber());
+
+        Assert.assertEquals(20, table.lineAt(0));
+        Assert.assertEquals(20, table.lineAt(3));
+        Assert.assertEquals(22, table.lineAt(4));
+        Assert.assertEquals(21, table.lineAt(39999));
+        Assert.assertEquals(25, table.lineAt(65535));
+        Assert.assertEquals(-1, table.lineAt(-1));
+    }
+
+    @Test
+    public void testEmpty() {
+        LineTable table = LineTable.of(new int[0], 0);
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(-1, table.lineAt(0));
+        Assert.assertEquals(-1, table.minLineNumber());
+        Assert.assertEquals(-1, table.maxLineNumber());
+    }
+
+    @Test
+    public void testClassViewLineTable() throws IOException {
+        ClassView view = ClassView.of(ClassMethodTableTest.readResource(ClassWithMethods.class));
+        int method1 = view.indexOf("method1", "()V");
+
+        LineTable table = view.lineTable(method1);
+        Assert.assertEquals(view.position(method1).minLineNumber(), table.minLineNumber());
+        Assert.assertEquals(table.minLineNumber(), table.lineAt(0));
+        /* пять вызовов и закрывающая скобка */
+        Assert.assertEquals(table.minLineNumber() + 5, table.maxLineNumber());
+
+        MethodPositionTable methods = view.methodTable(true);
+        LineTable retained = methods.lineTable(methods.indexOf("void method1()"));
+        Assert.assertEquals(table.maxLineNumber(), retained.maxLineNumber());
+        Assert.assertNull(view.methodTable().lineTable(0));
+    }
+
+    private static int entry(int startPc, int lineNumber) {
+        return startPc << 16 | lineNumber;
+    }
+}
@@ -0,0 +1,73 @@
+package com.steammachine.methodtable;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MethodOrderTest {
+
+    @Test
+    public void testDeclaredMethods() {
+        Assert.assertEquals(Arrays.asList("method1", "method2", "method3", "nop"),
+                names(MethodOrder.declaredMethods(ClassWithMethods.class)));
+    }
+
+    @Test
+    public void testMethodsWithoutLinesFollowOrder() {
+        Assert.assertEquals(Arrays.asList("c", "a", "b"),
+                names(MethodOrder.declaredMethods(Abstract.class)));
+        Assert.assertEquals(Arrays.asList("first", "z", "y", "last"),
+                names(MethodOrder.declaredMethods(Mixed.class)));
+    }
+
+    @Test
+    public void testSort() {
+        Map<Class<?>, List<Method>> sorted = MethodOrder.sort(Mixed.class, ClassWithMethods.class);
+        Assert.assertEquals(Arrays.asList(Mixed.class, ClassWithMethods.class),
+                new ArrayList<>(sorted.keySet()));
+        Assert.assertEquals(MethodOrder.declaredMethods(Mixed.class), sorted.get(Mixed.class));
+    }
+
+    @Test
+    public void testComparator() {
+        List<Method> methods = new ArrayList<>();
+        methods.addAll(Arrays.asList(ClassWithMethods.class.getDeclaredMethods()));
+        methods.addAll(Arrays.asList(Abstract.class.getDeclaredMethods()));
+        methods.sort(MethodOrder.comparator());
+        Assert.assertEquals(Arrays.asList("method1", "method2", "method3", "nop", "c", "a", "b"),
+                names(methods));
+    }
+
+    private static List<String> names(List<Method> methods) {
+        return methods.stream().map(Method::getName).collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unused")
+    private interface Abstract {
+
+        void c();
+
+        void a();
+
+        void b();
+    }
+
+    @SuppressWarnings("unused")
+    private abstract static class Mixed {
+
+        void first() {
+        }
+
+        abstract void z();
+
+        abstract void y();
+
+        void last() {
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.DefaultSourceCodePosition;
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MethodPositionTableTest {
+
+    @Test
+    public void testOf() {
+        Map<String, SourceCodePosition> positions = new HashMap<>();
+        positions.put("void b()", new DefaultSourceCodePosition(20, 1));
+        positions.put("void a()", new DefaultSourceCodePosition(10, 0));
+        positions.put("void c()", new DefaultSourceCodePosition(-1, 2, false));
+        positions.put("void d()", new DefaultSourceCodePosition(-1, -1, false));
+
+        MethodPositionTable table = MethodPositionTable.of(positions);
+        Assert.assertEquals(4, table.size());
+        Assert.assertEquals("void a()", table.signature(0));
+        Assert.assertEquals(10, table.minLineNumber(0));
+        Assert.assertTrue(table.hasPosition(table.indexOf("void b()")));
+        Assert.assertFalse(table.hasPosition(table.indexOf("void c()")));
+        Assert.assertEquals(2, table.order(table.indexOf("void c()")));
+        Assert.assertTrue(table.indexOf("void e()") < 0);
+        Assert.assertNull(table.get("void e()"));
+
+        Assert.assertEquals(positions, table.asMap());
+        Assert.assertEquals(table.asMap(), positions);
+        Assert.assertEquals(positions.hashCode(), table.asMap().hashCode());
+        Assert.assertSame(table, MethodPositionTable.of(table.asMap()));
+    }
+
+    @Test
+    public void testBytecode() throws IOException {
+        byte[] bytes = ClassMethodTableTest.readResource(Sorted.class);
+        ClassView view = ClassView.of(bytes);
+        MethodPositionTable table = view.methodTable();
+        MethodPositionTable parsed = new ClassMethodTableParser()
+                .parseTable(new ByteArrayInputStream(bytes), bytes.length);
+        Assert.assertTrue(table.hasBytecode());
+
+        int bridges = 0;
+        int synthetic = 0;
+        for (int i = 0; i < view.methodCount(); i++) {
+            int index = table.indexOf(view.methodSignature(i));
+            Assert.assertEquals(index, parsed.indexOf(view.methodSignature(i)));
+            Assert.assertEquals(view.methodAccessFlags(i), table.accessFlags(index));
+            Assert.assertEquals(view.isBridgeMethod(i), table.isBridge(index));
+            Assert.assertEquals(view.isSyntheticMethod(i), table.isSynthetic(index));
+            Assert.assertEquals(view.methodMaxStack(i), table.maxStack(index));
+            Assert.assertEquals(view.methodMaxLocals(i), table.maxLocals(index));
+            Assert.assertEquals(view.methodCodeLength(i), table.codeLength(index));
+            Assert.assertEquals(view.methodExceptionTableLength(i),
+                    table.exceptionTableLength(index));
+
+            Assert.assertEquals(table.accessFlags(index), parsed.accessFlags(index));
+            Assert.assertEquals(table.maxStack(index), parsed.maxStack(index));
+            Assert.assertEquals(table.maxLocals(index), parsed.maxLocals(index));
+            Assert.assertEquals(table.codeLength(index), parsed.codeLength(index));
+            Assert.assertEquals(table.exceptionTableLength(index),
+                    parsed.exceptionTableLength(index));
+
+            Assert.assertTrue(table.codeLength(index) > 0);
+            bridges += table.isBridge(index) ? 1 : 0;
+            synthetic += table.isSynthetic(index) ? 1 : 0;
+        }
+        /* мост compareTo(Object) синтетический, как и реализация лямбды */
+        Assert.assertEquals(1, bridges);
+        Assert.assertEquals(2, synthetic);
+
+        int compareTo = table.indexOf("int compareTo(java.lang.String)");
+        Assert.assertEquals(1, table.exceptionTableLength(compareTo));
+        /* this, other, runnable, e */
+        Assert.assertEquals(4, table.maxLocals(compareTo));
+
+        MethodPositionTable runnable = ClassView.of(
+                ClassMethodTableTest.readResource(Runnable.class)).methodTable();
+        Assert.assertEquals(0, runnable.codeLength(runnable.indexOf("void run()")));
+        Assert.assertEquals(0, runnable.maxStack(runnable.indexOf("void run()")));
+    }
+
+    @Test
+    public void testNoBytecode() {
+        MethodPositionTable table = MethodPositionTable.of(
+                ClassMethodTable.positionsOf(ClassWithMethods.class));
+        Assert.assertFalse(table.hasBytecode());
+        Assert.assertEquals(-1, table.accessFlags(0));
+        Assert.assertEquals(-1, table.codeLength(0));
+        Assert.assertFalse(table.isSynthetic(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMapIsReadOnly() {
+        MethodPositionTable.of(new HashMap<>()).asMap().put("void a()", null);
+    }
+
+    @Test
+    public void testClassViewMethodTable() throws IOException {
+        ClassView view = ClassView.of(ClassMethodTableTest.readResource(String.class));
+        Assert.assertEquals(view.positions(), view.methodTable().asMap());
+    }
+
+    /**
+     * класс с мостом compareTo(Object) и лямбдой
+     */
+    private static class Sorted implements Comparable<String> {
+
+        @Override
+        public int compareTo(String other) {
+            Runnable runnable = () -> other.length();
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                return -1;
+            }
+            return 0;
+        }
+    }
+}
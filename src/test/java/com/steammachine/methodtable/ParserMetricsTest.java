@@ -0,0 +1,85 @@
+package com.steammachine.methodtable;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParserMetricsTest {
+
+    private ParserMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = ParserMetrics.enable();
+        metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        ParserMetrics.disable();
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        ClassMethodTable.readClassFromInputStream(new ByteArrayInputStream(bytes));
+        ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(bytes));
+
+        Assert.assertEquals(2, metrics.getClassesParsed());
+        Assert.assertEquals(2L * bytes.length, metrics.getBytesParsed());
+        Assert.assertEquals(2L * ClassView.of(bytes).constantCount(),
+                metrics.getConstantPoolEntries());
+        /* конструктор, method1-3 и nop */
+        Assert.assertEquals(10, metrics.getMethodsWithLineNumbers());
+        Assert.assertEquals(0, metrics.getMethodsWithoutLineNumbers());
+        Assert.assertEquals(2, Arrays.stream(metrics.getParseTimeHistogram()).sum());
+        Assert.assertEquals(metrics.getParseTimeBucketsMicros().length + 1,
+                metrics.getParseTimeHistogram().length);
+        Assert.assertEquals(0, metrics.getFailures());
+    }
+
+    @Test
+    public void testFailuresByCause() throws Exception {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        byte[] broken = bytes.clone();
+        broken[10] = 2; // тег первой константы
+        for (int i = 0; i < 2; i++) {
+            try {
+                ClassMethodTable.readClassFromByteBuffer(ByteBuffer.wrap(broken));
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                // ожидаемо
+            }
+        }
+
+        Assert.assertEquals(0, metrics.getClassesParsed());
+        Assert.assertEquals(2, metrics.getFailures());
+        Map<String, Long> causes = metrics.getFailuresByCause();
+        Assert.assertEquals(Long.valueOf(2), causes.get(
+                IllegalStateException.class.getName() + ": Invalid byte tag in constant pool: #"));
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ParserMetrics.OBJECT_NAME);
+        Assert.assertTrue(server.isRegistered(name));
+
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        ClassMethodTableParser.forCurrentThread().parse(bytes, 0, bytes.length);
+        Assert.assertEquals(1L, server.getAttribute(name, "ClassesParsed"));
+
+        ParserMetrics.disable();
+        Assert.assertFalse(server.isRegistered(name));
+        ClassMethodTableParser.forCurrentThread().parse(bytes, 0, bytes.length);
+        Assert.assertEquals(1, metrics.getClassesParsed());
+    }
+}
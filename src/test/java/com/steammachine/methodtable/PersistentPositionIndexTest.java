@@ -0,0 +1,143 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import com.steammachine.methodtable.PersistentPositionIndex.JarIndex;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersistentPositionIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOpen() throws IOException {
+        byte[] classWithMethods = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        byte[] string = ClassMethodTableTest.readResource(String.class);
+        Path jar = folder.getRoot().toPath().resolve("test.jar");
+        writeJar(jar, classWithMethods, string);
+        Path directory = folder.getRoot().toPath().resolve("index");
+
+        JarIndex index = new PersistentPositionIndex(directory).open(jar);
+        Assert.assertEquals(2, index.classCount());
+        Assert.assertTrue(index.contains("java.lang.String"));
+        Assert.assertFalse(index.contains("java.lang.Object"));
+
+        Map<String, SourceCodePosition> expected =
+                ClassMethodTable.readClassFromInputStream(new ByteArrayInputStream(string));
+        Assert.assertEquals(expected, index.positions("java.lang.String"));
+        for (Map.Entry<String, SourceCodePosition> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(),
+                    index.position("java.lang.String", entry.getKey()));
+        }
+        Assert.assertNull(index.position("java.lang.String", "void missing()"));
+        Assert.assertNull(index.positions("java.lang.Object"));
+
+        Path indexFile = single(directory);
+        FileTime written = Files.getLastModifiedTime(indexFile);
+
+        /* новый экземпляр читает уже построенный индекс */
+        JarIndex reopened = new PersistentPositionIndex(directory).open(jar);
+        Assert.assertEquals(expected, reopened.positions("java.lang.String"));
+        Assert.assertEquals(written, Files.getLastModifiedTime(single(directory)));
+    }
+
+    @Test
+    public void testStaleIndexIsRebuilt() throws IOException {
+        byte[] classWithMethods = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path jar = folder.getRoot().toPath().resolve("test.jar");
+        writeJar(jar, classWithMethods);
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(1000000000000L));
+        Path directory = folder.getRoot().toPath().resolve("index");
+
+        PersistentPositionIndex store = new PersistentPositionIndex(directory);
+        JarIndex index = store.open(jar);
+        Assert.assertSame(index, store.open(jar));
+        Assert.assertFalse(index.contains("java.lang.String"));
+
+        writeJar(jar, classWithMethods, ClassMethodTableTest.readResource(String.class));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(1000000001000L));
+
+        Assert.assertTrue(store.open(jar).contains("java.lang.String"));
+        Assert.assertTrue(new PersistentPositionIndex(directory).open(jar)
+                .contains("java.lang.String"));
+    }
+
+    @Test
+    public void testTruncatedIndexIsRebuilt() throws IOException {
+        Path jar = folder.getRoot().toPath().resolve("test.jar");
+        writeJar(jar, ClassMethodTableTest.readResource(ClassWithMethods.class),
+                ClassMethodTableTest.readResource(String.class));
+        Path directory = folder.getRoot().toPath().resolve("index");
+        new PersistentPositionIndex(directory).open(jar);
+
+        Path indexFile = single(directory);
+        byte[] content = Files.readAllBytes(indexFile);
+        Files.write(indexFile, Arrays.copyOf(content, content.length / 2));
+
+        JarIndex index = new PersistentPositionIndex(directory).open(jar);
+        Assert.assertNotNull(index.positions("java.lang.String"));
+        Assert.assertEquals(content.length, Files.size(single(directory)));
+    }
+
+    @Test
+    public void testIncompleteIndexIsNotWritten() throws IOException {
+        Path jar = folder.getRoot().toPath().resolve("test.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("com/steammachine/methodtable/ClassWithMethods.class"));
+            out.write(ClassMethodTableTest.readResource(ClassWithMethods.class));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("Broken.class"));
+            out.write(new byte[]{1, 2, 3});
+            out.closeEntry();
+        }
+        Path directory = folder.getRoot().toPath().resolve("index");
+
+        try {
+            new PersistentPositionIndex(directory).open(jar);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("1 error"));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(0, files.count());
+        } catch (NoSuchFileException e) {
+            /* каталог индекса еще не создан */
+        }
+    }
+
+    private static Path single(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            Path[] paths = files.toArray(Path[]::new);
+            Assert.assertEquals(1, paths.length);
+            return paths[0];
+        }
+    }
+
+    private static void writeJar(Path jar, byte[] classWithMethods, byte[]... strings)
+            throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("com/steammachine/methodtable/ClassWithMethods.class"));
+            out.write(classWithMethods);
+            out.closeEntry();
+            for (byte[] string : strings) {
+                out.putNextEntry(new ZipEntry("java/lang/String.class"));
+                out.write(string);
+                out.closeEntry();
+            }
+        }
+    }
+}
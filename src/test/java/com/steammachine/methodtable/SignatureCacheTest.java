@@ -0,0 +1,66 @@
+package com.steammachine.methodtable;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignatureCacheTest {
+
+    @Test
+    public void testSignature() {
+        SignatureCache cache = new SignatureCache(100);
+        Assert.assertEquals(128, cache.capacity());
+
+        String signature = cache.signature("equals", "(Ljava/lang/Object;)Z");
+        Assert.assertEquals("boolean equals(java.lang.Object)", signature);
+        Assert.assertSame(signature, cache.signature("equals", "(Ljava/lang/Object;)Z"));
+        Assert.assertEquals("void equals()", cache.signature("equals", "()V"));
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(2, cache.misses());
+        Assert.assertEquals(1.0 / 3, cache.hitRate(), 1e-9);
+
+        cache.clear();
+        Assert.assertEquals(0, cache.hits() + cache.misses());
+        Assert.assertEquals(0, cache.hitRate(), 0);
+    }
+
+    @Test
+    public void testBounded() {
+        SignatureCache cache = new SignatureCache(4);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("int method" + i + "(long)", cache.signature("method" + i, "(J)I"));
+        }
+        Assert.assertEquals(4, cache.capacity());
+        Assert.assertEquals(1000, cache.misses());
+    }
+
+    @Test
+    public void testBytes() {
+        SignatureCache cache = new SignatureCache(16);
+        byte[] data = "xx<init>(I)V".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertNull(cache.get(data, 2, 6, 8, 4));
+        cache.put("<init>", "(I)V", "void <init>(int)");
+        Assert.assertEquals("void <init>(int)", cache.get(data, 2, 6, 8, 4));
+        Assert.assertSame(cache.signature("<init>", "(I)V"), cache.get(data, 2, 6, 8, 4));
+
+        /* не ASCII строки по байтам не ищутся */
+        byte[] cyrillic = "метод".getBytes(StandardCharsets.UTF_8);
+        Assert.assertNull(cache.get(cyrillic, 0, cyrillic.length, 0, 0));
+    }
+
+    @Test
+    public void testParserSharesSignatures() throws Exception {
+        SignatureCache cache = new SignatureCache(1024);
+        ClassMethodTableParser parser = new ClassMethodTableParser(cache);
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+
+        String first = parser.parse(bytes, 0, bytes.length).keySet().iterator().next();
+        Assert.assertEquals(0, cache.hits());
+        Assert.assertEquals(5, cache.misses());
+
+        String second = parser.parse(bytes, 0, bytes.length).keySet().stream()
+                .filter(first::equals).findFirst().get();
+        Assert.assertSame(first, second);
+        Assert.assertEquals(5, cache.hits());
+    }
+}
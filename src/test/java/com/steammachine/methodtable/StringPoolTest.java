@@ -0,0 +1,90 @@
+package com.steammachine.methodtable;
+
+import com.steammachine.methodtable.ClassMethodTable.SourceCodePosition;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StringPoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIntern() {
+        StringPool pool = new StringPool(3);
+        String first = new String("java.lang.String toString()");
+        String second = new String("java.lang.String toString()");
+
+        Assert.assertSame(first, pool.intern(first));
+        Assert.assertSame(first, pool.intern(second));
+        Assert.assertEquals(1, pool.size());
+        Assert.assertEquals(1, pool.hits());
+    }
+
+    @Test
+    public void testUnusedStringsAreReleased() throws InterruptedException {
+        StringPool pool = new StringPool(4);
+        for (int i = 0; i < 1000; i++) {
+            pool.intern("void method" + i + "()");
+        }
+        for (int i = 0; i < 50 && pool.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testDeduplicatedTable() {
+        Map<String, SourceCodePosition> positions =
+                ClassMethodTable.positionsOf(ClassWithMethods.class);
+        MethodPositionTable first = MethodPositionTable.of(copy(positions));
+        MethodPositionTable second = MethodPositionTable.of(copy(positions));
+        Assert.assertNotSame(first.signature(0), second.signature(0));
+
+        StringPool pool = new StringPool(8);
+        MethodPositionTable pooledFirst = first.deduplicated(pool);
+        MethodPositionTable pooledSecond = second.deduplicated(pool);
+        Assert.assertSame(pooledFirst, pooledFirst.deduplicated(pool));
+        Assert.assertEquals(positions, pooledSecond.asMap());
+        for (int i = 0; i < pooledFirst.size(); i++) {
+            Assert.assertSame(pooledFirst.signature(i), pooledSecond.signature(i));
+        }
+    }
+
+    @Test
+    public void testIndexerUsesPool() throws IOException {
+        byte[] bytes = ClassMethodTableTest.readResource(ClassWithMethods.class);
+        Path directory = folder.newFolder("classes").toPath();
+        Files.write(directory.resolve("First.class"), bytes);
+        Files.write(directory.resolve("Second.class"), bytes);
+
+        Map<String, Map<String, SourceCodePosition>> index = new ClasspathIndexer(
+                ForkJoinPool.commonPool(), (source, error) -> Assert.fail(source),
+                new StringPool(8)).index(Collections.singletonList(directory));
+
+        String first = index.get("First").keySet().iterator().next();
+        String second = index.get("Second").keySet().iterator().next();
+        Assert.assertEquals(first, second);
+        Assert.assertSame(first, second);
+    }
+
+    /**
+     * копия с отдельными экземплярами строк - сигнатуры разобранных классов уже могут быть общими
+     * благодаря {@link SignatureCache}
+     */
+    private static Map<String, SourceCodePosition> copy(Map<String, SourceCodePosition> positions) {
+        Map<String, SourceCodePosition> copy = new HashMap<>();
+        positions.forEach((signature, position) -> copy.put(new String(signature), position));
+        return copy;
+    }
+}